@@ -21,7 +21,6 @@ import static spark.Spark.port;
 import static spark.Spark.post;
 import static spark.Spark.staticFiles;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -29,14 +28,32 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.map.HashedMap;
 import org.pac4j.core.config.Config;
@@ -49,17 +66,57 @@ import org.pac4j.sparkjava.SparkWebContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import de.gerdiproject.store.datamodel.CacheElement;
+import de.gerdiproject.store.datamodel.ChecksumAlgorithm;
+import de.gerdiproject.store.datamodel.ChecksumStatus;
+import de.gerdiproject.store.datamodel.CopyBatch;
+import de.gerdiproject.store.datamodel.CopyStatus;
 import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.datamodel.IMultipartUpload;
+import de.gerdiproject.store.datamodel.IListCursor;
 import de.gerdiproject.store.datamodel.ListElement;
 import de.gerdiproject.store.datamodel.Options;
+import de.gerdiproject.store.datamodel.Priority;
 import de.gerdiproject.store.datamodel.ResearchDataInputStream;
+import de.gerdiproject.store.datamodel.SessionState;
 import de.gerdiproject.store.datamodel.StoreTask;
+import de.gerdiproject.store.datamodel.TaskDocuments;
+import de.gerdiproject.store.datamodel.UrlMetadata;
+import de.gerdiproject.store.handler.CopySrvEventRoute;
+import de.gerdiproject.store.handler.CopySrvShardRoute;
+import de.gerdiproject.store.handler.PostBulkRoute;
 import de.gerdiproject.store.handler.PostRootRoute;
+import de.gerdiproject.store.handler.ReadyRoute;
+import de.gerdiproject.store.k8s.CopyBackend;
+import de.gerdiproject.store.k8s.CopySrvController;
+import de.gerdiproject.store.k8s.CopySrvEvents;
+import de.gerdiproject.store.k8s.CopySrvFleet;
+import de.gerdiproject.store.k8s.CopySrvGarbageCollector;
+import de.gerdiproject.store.k8s.CopySrvJobBackend;
+import de.gerdiproject.store.k8s.CopySrvPlacement;
+import de.gerdiproject.store.k8s.CopySrvResources;
+import de.gerdiproject.store.pac4j.AuthenticatedUser;
 import de.gerdiproject.store.pac4j.GerdiConfigFactory;
+import de.gerdiproject.store.util.AdmissionController;
+import de.gerdiproject.store.util.BandwidthAllocator;
+import de.gerdiproject.store.util.BoundedInputStream;
 import de.gerdiproject.store.util.CacheGarbageCollectionTask;
+import de.gerdiproject.store.util.ConcurrencyTuner;
+import de.gerdiproject.store.util.DirectoryListingCache;
+import de.gerdiproject.store.util.DownloadCache;
+import de.gerdiproject.store.util.FileBundler;
+import de.gerdiproject.store.util.HostLimiter;
+import de.gerdiproject.store.util.JsonResponseWriter;
+import de.gerdiproject.store.util.ListElementCursor;
+import de.gerdiproject.store.util.MultipartUploader;
+import de.gerdiproject.store.util.UrlMetadataResolver;
 import de.gerdiproject.store.util.ScalingStrategy.Max4Scaler;
 import de.gerdiproject.store.util.ScalingStrategy.Max4TaskForOne;
 import de.gerdiproject.store.util.ScalingStrategy.OneForAll;
@@ -68,22 +125,22 @@ import de.gerdiproject.store.util.ScalingStrategy.ScalingStrategy;
 import io.kubernetes.client.ApiClient;
 import io.kubernetes.client.ApiException;
 import io.kubernetes.client.apis.CoreV1Api;
-import io.kubernetes.client.apis.ExtensionsV1beta1Api;
 import io.kubernetes.client.models.ExtensionsV1beta1Deployment;
 import io.kubernetes.client.models.ExtensionsV1beta1DeploymentSpec;
 import io.kubernetes.client.models.V1Container;
 import io.kubernetes.client.models.V1ContainerPort;
-import io.kubernetes.client.models.V1DeleteOptions;
+import io.kubernetes.client.models.V1EnvVar;
 import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1PersistentVolumeClaimVolumeSource;
 import io.kubernetes.client.models.V1Pod;
-import io.kubernetes.client.models.V1PodList;
 import io.kubernetes.client.models.V1PodSpec;
 import io.kubernetes.client.models.V1PodTemplateSpec;
+import io.kubernetes.client.models.V1ResourceRequirements;
+import io.kubernetes.client.models.V1Volume;
 import io.kubernetes.client.models.V1VolumeMount;
-import io.kubernetes.client.models.V1beta1ReplicaSet;
-import io.kubernetes.client.models.V1beta1ReplicaSetList;
 import spark.Request;
 import spark.Response;
+import spark.Route;
 
 /**
  * This class provides some functionality to implement a store service. It also
@@ -116,12 +173,60 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 																						// different
 																						// implementations
 
+	/**
+	 * Cache for the directory listings returned by listFiles
+	 */
+	private final DirectoryListingCache<E> listingCache = new DirectoryListingCache<>(
+			StoreConstants.LISTING_CACHE_SIZE, Duration.ofSeconds(StoreConstants.LISTING_CACHE_TTL_SECONDS),
+			StoreConstants.LISTING_CACHE_COALESCE);
+
 	// remeber Session and Pods
 	private final Map<String, String[]> podCopySrvTaks = new ConcurrentHashMap<>();
+	/**
+	 * URLs of each copying session which were not sent to a copy server yet
+	 */
+	private final Map<String, Queue<String>> pendingWork = new ConcurrentHashMap<>();
+	/**
+	 * Last progress reported by copy servers which were already drained
+	 */
+	private final Map<String, List<JsonElement>> finishedProgress = new ConcurrentHashMap<>();
+	/**
+	 * Sessions which have to checkpoint their work and give up their copy servers
+	 */
+	private final Set<String> preemptedSessions = ConcurrentHashMap.newKeySet();
+	/**
+	 * The session of the copyFile call on the current thread, passed through the
+	 * deprecated signature
+	 */
+	private final ThreadLocal<String> copySession = new ThreadLocal<>();
 	/**
 	 * Timer for garbage collection on the cache
 	 */
 	private final Timer timer = new Timer(true);
+	/**
+	 * Executor running the copy orchestration off the request threads. Each
+	 * orchestration blocks its thread for the whole copy, the admission
+	 * controller admits no more of them than there are threads, so sessions
+	 * beyond that wait in its queue instead of in the executor.
+	 */
+	private final ThreadPoolExecutor orchestrationExecutor = new ThreadPoolExecutor(
+			StoreConstants.ORCHESTRATION_THREADS, StoreConstants.ORCHESTRATION_THREADS, 60L, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(StoreConstants.ORCHESTRATION_THREADS));
+	/**
+	 * Executor sending rate changes to the copy servers
+	 */
+	private final ThreadPoolExecutor copySrvUpdateExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>());
+	/**
+	 * Shares the bandwidth budget between the copy servers
+	 */
+	private final BandwidthAllocator bandwidthAllocator = new BandwidthAllocator(
+			StoreConstants.BANDWIDTH_GLOBAL_BYTES_PER_SECOND, StoreConstants.BANDWIDTH_USER_BYTES_PER_SECOND,
+			StoreConstants.BANDWIDTH_SESSION_BYTES_PER_SECOND);
+	/**
+	 * The JWT security filter, only applied to the secured routes
+	 */
+	private SecurityFilter securityFilter;
 	/**
 	 * Flag to check if this service was already executed
 	 */
@@ -132,6 +237,86 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 
 	private CoreV1Api k8sApi;
 
+	/**
+	 * Deletes copy server deployments in the background
+	 */
+	private final CopySrvGarbageCollector garbageCollector;
+
+	/**
+	 * Rate limits users and admits copy jobs within the global capacity
+	 */
+	private final AdmissionController admissionController = new AdmissionController(
+			StoreConstants.USER_REQUEST_BURST, StoreConstants.USER_REQUESTS_PER_MINUTE / 60,
+			StoreConstants.MAX_CONCURRENT_REPLICAS, StoreConstants.MAX_BYTES_IN_FLIGHT,
+			StoreConstants.PREEMPTION_ENABLED, StoreConstants.ORCHESTRATION_THREADS);
+
+	/**
+	 * Reconciles the copy server deployments of this service
+	 */
+	private final CopySrvController copySrvController;
+
+	/**
+	 * The shared copy server fleet, null if each session gets its own deployment
+	 */
+	private final CopySrvFleet<E> fleet;
+
+	/**
+	 * Runs the copy servers of each session, as deployment or as jobs
+	 */
+	private final CopyBackend copyBackend;
+
+	/**
+	 * The job backend, null if sessions run as deployments
+	 */
+	private final CopySrvJobBackend jobBackend;
+
+	/**
+	 * Uploads the data of sessions in-process, if the store supports multipart uploads
+	 */
+	private final UploadBackend uploadBackend = new UploadBackend();
+
+	/**
+	 * Tunes the parallel transfers of each copy server
+	 */
+	private final ConcurrencyTuner concurrencyTuner = new ConcurrencyTuner(1, StoreConstants.COPYSRV_STREAMS,
+			StoreConstants.COPYSRV_TUNE_DECREASE, StoreConstants.COPYSRV_TUNE_DROP_TOLERANCE);
+
+	/**
+	 * Places the copy servers close to the target volume
+	 */
+	private final CopySrvPlacement copySrvPlacement;
+
+	/**
+	 * Resources of the copy servers of each admitted session, sized by its workload
+	 */
+	private final Map<String, V1ResourceRequirements> copySrvResources = new ConcurrentHashMap<>();
+
+	/**
+	 * Credentials and target directory of each admitted session
+	 */
+	private final Map<String, CopyBatch<E>> copyTargets = new ConcurrentHashMap<>();
+
+	/**
+	 * Events reported by the copy servers, wakes up the orchestration
+	 */
+	private final CopySrvEvents copySrvEvents = new CopySrvEvents();
+
+	/**
+	 * Index of the download cache shared by all copy servers
+	 */
+	private final DownloadCache downloadCache = new DownloadCache(StoreConstants.DOWNLOAD_CACHE_MAX_BYTES);
+
+	/**
+	 * Connection limits of the source hosts, shared by all copy servers
+	 */
+	private final HostLimiter hostLimiter = new HostLimiter(StoreConstants.HOST_MAX_CONNECTIONS,
+			StoreConstants.HOST_MIN_BACKOFF_MILLIS, StoreConstants.HOST_MAX_BACKOFF_MILLIS);
+
+	/**
+	 * Authenticates the callbacks of the copy servers, sent together with each batch
+	 */
+	private final String callbackToken = newCallbackToken();
+
 	/**
 	 * 
 	 * @param options extends all the imagename, deploymentname, gson builder for
@@ -143,11 +328,77 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 
 		// Run a garbage collection task every 5 minutes
 		timer.schedule(new CacheGarbageCollectionTask<E>(this.cacheMap), 300000, 300000);
+		// Forget the rate limits of idle users every 5 minutes
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				admissionController.cleanUp();
+			}
+		}, 300000, 300000);
 		ApiClient k8sClient = io.kubernetes.client.util.Config.defaultClient();
 		io.kubernetes.client.Configuration.setDefaultApiClient(k8sClient);
 		k8sApi = new CoreV1Api();
 		this.options = options;
-		killAllCopySrvDeployment();
+		this.garbageCollector = new CopySrvGarbageCollector(k8sClient, NAMESPACE,
+				options.getCopySrvDeploymentName());
+		// Watches are long running, so they need a client without read timeout
+		ApiClient watchClient = io.kubernetes.client.util.Config.defaultClient();
+		this.copySrvPlacement = new CopySrvPlacement(k8sClient, NAMESPACE);
+		watchClient.getHttpClient().setReadTimeout(0, TimeUnit.SECONDS);
+		// Deployments left over by a previous run of this instance are not desired and
+		// removed once the controller is synchronized
+		this.copySrvController = new CopySrvController(k8sClient, watchClient, NAMESPACE,
+				options.getCopySrvDeploymentName(), StoreConstants.COPYSRV_OWNER, this::buildCopySrvDeployment,
+				garbageCollector);
+		this.copySrvController.addPodListener(copySrvEvents::signal);
+		copySrvEvents.addThrottleListener(
+				(url, retryAfterMillis) -> hostLimiter.throttled(HostLimiter.hostOf(url), retryAfterMillis));
+		if ("job".equalsIgnoreCase(StoreConstants.COPYSRV_BACKEND) && isCallbackEnabled()) {
+			this.jobBackend = new CopySrvJobBackend(k8sClient, watchClient, NAMESPACE,
+					options.getCopySrvDeploymentName(), options.getCopySrvDeploymentName(),
+					this::buildCopySrvJobTemplate, copySrvController, new JobListener(),
+					StoreConstants.JOB_BACKOFF_LIMIT, StoreConstants.JOB_TTL_SECONDS);
+			this.jobBackend.start();
+			this.copyBackend = jobBackend;
+		} else {
+			if ("job".equalsIgnoreCase(StoreConstants.COPYSRV_BACKEND)) {
+				// Jobs fetch their shards from this service
+				LOGGER.warn("The job backend requires COPYSRV_CALLBACK_URL, deployments are used instead.");
+			}
+			this.jobBackend = null;
+			this.copyBackend = new DeploymentBackend();
+		}
+		this.copySrvController.start();
+		if (StoreConstants.COPYSRV_SHARED_FLEET) {
+			this.fleet = new CopySrvFleet<>(copySrvController, options.getCopySrvDeploymentName() + "-fleet",
+					StoreConstants.FLEET_MIN_REPLICAS, StoreConstants.FLEET_MAX_REPLICAS,
+					StoreConstants.FLEET_BATCH_SIZE, this::sendBatch, this::taskDoneCall, this::finishFleetSession);
+			this.fleet.useGate(new CopySrvFleet.Gate<E>() {
+				@Override
+				public boolean tryAcquire(final CopyBatch<E> batch) {
+					return hostLimiter.tryAcquire(HostLimiter.hostsOf(batch.getUrls()));
+				}
+
+				@Override
+				public void release(final CopyBatch<E> batch, final boolean finished) {
+					hostLimiter.release(HostLimiter.hostsOf(batch.getUrls()), finished);
+					if (finished) {
+						downloadCache.complete(batch.getSessionId(),
+								reportedFinished(batch.getSessionId(), batch.getUrls()));
+					}
+				}
+			});
+			if (isCallbackEnabled()) {
+				this.fleet.useCompletionEvents(copySrvEvents::consumeBatchFinished,
+						StoreConstants.COPYSRV_POLL_FALLBACK_MILLIS);
+				final CopySrvFleet<E> shared = this.fleet;
+				copySrvEvents.addBatchListener(podIP -> shared.wakeUp());
+			}
+			this.fleet.start();
+		} else {
+			this.fleet = null;
+		}
+		orchestrationExecutor.allowCoreThreadTimeOut(true);
 
 	}
 
@@ -179,6 +430,24 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 	 */
 	protected abstract List<ListElement> listFiles(String directory, E creds);
 
+	/**
+	 * Returns a cursor over the files of a requested directory. May be overwritten
+	 * by implementations able to list large directories lazily, by default the
+	 * cached result of {@link #listFiles(String, ICredentials)} is wrapped.
+	 *
+	 * @param directory The requested directory relative to the root directory.
+	 * @param pageToken A token returned by a previous cursor for the same
+	 *                  directory, may be null to start at the beginning
+	 * @param creds     The stored credentials, may be null if no credentials were
+	 *                  stored
+	 * @return A cursor over the elements depicting the files/subdirectories
+	 * @throws IllegalArgumentException If the page token is not valid
+	 */
+	protected IListCursor openFileCursor(final String directory, final String pageToken, final E creds) {
+		return new ListElementCursor(listingCache.get(creds, directory, () -> listFiles(directory, creds)),
+				pageToken);
+	}
+
 	/**
 	 * This method is executed once before any copy is triggered. May be overwritten
 	 * to perform tasks before starting to copy data sets.
@@ -201,8 +470,21 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 	protected abstract boolean createDir(final String dir, final String dirName, final E creds);
 
 	/**
-	 * Sets the folder in classpath serving static files. Observe: this method must
-	 * be called before all other methods.
+	 * Returns the multipart upload of the store. May be overwritten by
+	 * implementations backed by object stores, the data is then uploaded by this
+	 * service instead of copy servers.
+	 *
+	 * @return The upload calls of the object store, null if copy servers write
+	 *         the data
+	 */
+	protected IMultipartUpload<E> getMultipartUpload() {
+		return null;
+	}
+
+	/**
+	 * Sets the folder in classpath serving static files. Static files are served
+	 * without authentication. Observe: this method must be called before all other
+	 * methods.
 	 *
 	 * @param folder the folder in classpath.
 	 */
@@ -223,42 +505,83 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 		}
 		this.running = true;
 
-		//Build the security filter
-		 final Config config = new GerdiConfigFactory().build();
-		 final SecurityFilter secFilter = new SecurityFilter(config,
-		 "DirectBearerAuthClient");
+		// Build the security filter
+		final GerdiConfigFactory configFactory = new GerdiConfigFactory();
+		final Config config = configFactory.build();
+		this.securityFilter = new SecurityFilter(config, "DirectBearerAuthClient");
 
 		port(5678);
-		// Ignore trailing slashes and add security check for JWT
-		before((req, res) -> {
-			secFilter.handle(req, res);
-		});
+
+		// Unauthenticated probes, must stay cheap
+		get(StoreConstants.HEALTH_PATH, (req, res) -> StoreConstants.HEALTH_RESPONSE);
+		get(StoreConstants.READY_PATH, new ReadyRoute()
+				.addCheck("kubernetes", () -> copySrvController.hasSynced() && copyBackend.hasSynced())
+				.addCheck("jwks", () -> configFactory.getLoadedKeyCount() > 0));
+
+		// Callbacks of the copy servers, authenticated by the callback token
+		post(StoreConstants.COPYSRV_EVENTS_PATH, new CopySrvEventRoute(copySrvEvents, callbackToken));
+		get(StoreConstants.COPYSRV_SHARDS_PATH + "/:" + StoreConstants.SESSION_ID + "/:index",
+				new CopySrvShardRoute(this::getShardPayload, callbackToken));
 
 		// Accepts new storing tasks and initializes them in the in-memory cache
-		post("/", new PostRootRoute<E>(cacheMap));
+		securedPost("/", new PostRootRoute<E>(cacheMap, admissionController));
+
+		// Accepts a list of storing tasks and creates one session for each
+		securedPost("/bulk", new PostBulkRoute<E>(cacheMap, admissionController));
 
 		// Checker whether or not the user is logged in
-		get("/loggedIn/:" + StoreConstants.SESSION_ID, this::getLoggedIn);
+		securedGet("/loggedIn/:" + StoreConstants.SESSION_ID, this::getLoggedIn);
 
 		// Return a list with the progress of each element
-		get("/progress/:" + StoreConstants.SESSION_ID, this::getProgress);
+		securedGet("/progress/:" + StoreConstants.SESSION_ID, this::getProgress);
+
+		// Return a compact status of several sessions, by default all of the user
+		securedGet("/progress", this::getSessionsProgress);
 
 		// Log in the user
-		post("/login/:" + StoreConstants.SESSION_ID, this::postLogin);
+		securedPost("/login/:" + StoreConstants.SESSION_ID, this::postLogin);
 
 		// Start the copy progress
-		get("/copy/:" + StoreConstants.SESSION_ID, this::getCopy);
+		securedGet("/copy/:" + StoreConstants.SESSION_ID, this::getCopy);
+
+		// Add documents to an existing session, even while copying
+		securedPost("/docs/:" + StoreConstants.SESSION_ID, this::postDocs);
 
 		// Returns a list of files for a given directory
-		get("/files/:" + StoreConstants.SESSION_ID, this::getFiles);
+		securedGet("/files/:" + StoreConstants.SESSION_ID, this::getFiles);
 
 		// Create new dir
-		get("/createdir/:" + StoreConstants.SESSION_ID + "/:dirname", this::getCreatedir);
+		securedGet("/createdir/:" + StoreConstants.SESSION_ID + "/:dirname", this::getCreatedir);
 
 		//abort the copyprocess and kill the killCopySrvs for this session
-		get("/kill/:" + StoreConstants.SESSION_ID, this::getKill);
+		securedGet("/kill/:" + StoreConstants.SESSION_ID, this::getKill);
 		// Returns the changed Strategy
-		get("/strategy/:" + "strategyNum", this::getStrategy);
+		securedGet("/strategy/:" + "strategyNum", this::getStrategy);
+	}
+
+	/**
+	 * Applies the JWT security check to all requests matching the given path.
+	 * Routes registered by this library are secured already, implementations must
+	 * call this method for their own routes which require an authenticated user.
+	 * Observe: this method must be called after the run method.
+	 *
+	 * @param path The path pattern, in the syntax used by SparkJava's routes
+	 */
+	protected void secure(final String path) {
+		if (!running) {
+			throw new IllegalStateException("This method must be called after executing the run method.");
+		}
+		before(path, securityFilter);
+	}
+
+	private void securedGet(final String path, final Route route) {
+		secure(path);
+		get(path, route);
+	}
+
+	private void securedPost(final String path, final Route route) {
+		secure(path);
+		post(path, route);
 	}
 
 	private Object getStrategy(Request request, Response response) {
@@ -299,18 +622,59 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 		final String dirName = request.params("dirname");
 		final String dir = request.queryParamOrDefault(StoreConstants.DIR_QUERYPARAM, "/");
 		final boolean created = createDir(dir, dirName, creds);
+		if (created) {
+			listingCache.invalidate(creds, dir);
+		}
 		return String.format(StoreConstants.DIR_CREATED_RESPONSE, created);
 	}
 
-	private Object getFiles(Request request, Response response) {
+	private Object getFiles(Request request, Response response) throws IOException {
 		final E creds = cacheMap.get(request.params(StoreConstants.SESSION_ID)).getCredentials();
 		if (creds == null) {
 			response.status(403);
 			return "Not logged in";
 		}
 		final String dir = request.queryParamOrDefault(StoreConstants.DIR_QUERYPARAM, "/");
-		final List<ListElement> ret = listFiles(dir, creds);
-		return new Gson().toJson(ret);
+		final String pageToken = request.queryParams(StoreConstants.PAGE_TOKEN_QUERYPARAM);
+		final String limitParam = request.queryParams(StoreConstants.LIMIT_QUERYPARAM);
+		final boolean paged = pageToken != null || limitParam != null;
+		int limit = Integer.MAX_VALUE;
+		if (limitParam != null) {
+			try {
+				limit = Integer.parseInt(limitParam);
+			} catch (NumberFormatException e) {
+				limit = 0;
+			}
+			if (limit <= 0) {
+				response.status(400);
+				return "Invalid limit";
+			}
+		}
+
+		final IListCursor cursor;
+		try {
+			cursor = openFileCursor(dir, pageToken, creds);
+		} catch (IllegalArgumentException e) {
+			response.status(400);
+			return "Invalid page token";
+		}
+		// Unpaged requests get a plain array, paged ones an object with the token
+		try (IListCursor elements = cursor; JsonWriter writer = JsonResponseWriter.open(request, response)) {
+			if (paged) {
+				writer.beginObject();
+				writer.name("elements");
+			}
+			writer.beginArray();
+			for (int count = 0; count < limit && elements.hasNext(); count++) {
+				JsonResponseWriter.GSON.toJson(elements.next(), ListElement.class, writer);
+			}
+			writer.endArray();
+			if (paged) {
+				writer.name("nextPageToken").value(elements.getNextPageToken());
+				writer.endObject();
+			}
+		}
+		return "";
 	}
 
 	private Object getCopy(Request request, Response response) throws ExecutionException {
@@ -318,204 +682,1188 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 		//long start= System.currentTimeMillis();
 		final String session = request.params(StoreConstants.SESSION_ID);
 		final CacheElement<E> cacheElement = cacheMap.get(session);
-		ExtensionsV1beta1Api extensionV1Api = new ExtensionsV1beta1Api();
-		extensionV1Api.setApiClient(k8sApi.getApiClient());
+		if (cacheElement == null) {
+			response.status(404);
+			return "Session does not exist.";
+		}
 		final StoreTask task = cacheElement.getTask();
 
-		// Don't start the copy process twice
-		if (task.isStarted()) {
-			return "Process already started";
-		} else {
-			task.setStarted(true);
+		// Repeated requests only report the state
+		if (task.getState() != SessionState.READY) {
+			return reportCopyState(session, task, response);
+		}
+
+		// Rate limit per authenticated user, before anything is started
+		final String user = AuthenticatedUser.getName(request, response);
+		if (user == null) {
+			response.status(403);
+			return "No authenticated user";
+		}
+		final long wait = admissionController.tryAcquire(user);
+		if (wait > 0) {
+			response.status(429);
+			response.header("Retry-After", Long.toString((wait + 999) / 1000));
+			return "Too many requests";
+		}
+
+		// Only one of concurrent requests starts the copy process
+		if (!task.transition(SessionState.READY, SessionState.PROVISIONING)) {
+			return reportCopyState(session, task, response);
+		}
+
+		// Snapshot of the work, documents added later are queued by postDocs
+		final Queue<String> queue = new ConcurrentLinkedQueue<>();
+		long bytes = 0;
+		boolean sizeKnown = true;
+		synchronized (task) {
+			final TaskDocuments documents = task.getDocuments();
+			for (int i = 0; i < documents.size(); i++) {
+				queue.add(documents.getUrl(i));
+				bytes += Math.max(documents.getSize(i), 0);
+				sizeKnown &= documents.getSize(i) >= 0;
+			}
+			if (!useFleet()) {
+				pendingWork.put(session, queue);
+			}
 		}
 
 		final E creds = cacheElement.getCredentials();
 		final String targetDir = request.queryParamOrDefault(StoreConstants.DIR_QUERYPARAM, "/");
 		this.preCopy(creds);
 
-		int replicas = replicationChooser(cacheElement.getTask().getElements().size());
-		ExtensionsV1beta1Deployment deploymentStart = null;
+		// Small copies are interactive unless the user chose a priority
+		final Priority priority;
+		if (task.getPriority() != null) {
+			priority = task.getPriority();
+		} else if (sizeKnown && bytes <= StoreConstants.INTERACTIVE_MAX_BYTES) {
+			priority = Priority.HIGH;
+		} else {
+			priority = Priority.NORMAL;
+		}
 
-		// deployment wird der Session zugeordnet
-		try {
-			deploymentStart = createCopySrvDeployment(options.getCopySrvDeploymentName() + session, replicas);
-		} catch (ApiException e1) {
-			LOGGER.error(e1.getResponseBody(), e1);
-			response.status(409); // Error
-			e1.printStackTrace();
-			return " Deployment"+options.getCopySrvDeploymentName() + session+" konnte nicht erstellt werden";
+		final int position;
+		if (useFleet()) {
+			// The fleet has its own replica limit, only the bytes are admitted
+			position = admissionController.admit(session, priority, 0, bytes, () -> {
+				// Progress is available as soon as the first batch is dispatched
+				podCopySrvTaks.putIfAbsent(session, new String[0]);
+				fleet.submit(session, task.getUserId(), creds, targetDir, new ArrayList<>(queue));
+				task.advance(SessionState.COPYING);
+			}, null);
+		} else {
+			position = admitCopy(session, task, creds, targetDir, priority, bytes);
 		}
-		if (null == deploymentStart) {
-			System.out.println("hier stimmt was nicht mit dem deployment");
+		if (position > 0) {
+			response.status(202);
+			return String.format(StoreConstants.QUEUED_RESPONSE, position);
 		}
+		return "";
+	}
 
-		// damit der Thread damit arbeiten kann
-		final ExtensionsV1beta1Deployment deployment = deploymentStart;
-		new Thread(() -> {
-			V1PodList pods = null;
-			try {
-				boolean killProgress = false;
-				Integer readyReplicas = null;
-				do {
-					Thread.sleep(1000 / 2);
-					readyReplicas = extensionV1Api
-							.readNamespacedDeploymentStatus(deployment.getMetadata().getName(), NAMESPACE, null)
-							.getStatus().getReadyReplicas();
-					if (readyReplicas == null)
-						readyReplicas = 0;
+	/**
+	 * Answers a copy request for a session which is not ready to start.
+	 */
+	private Object reportCopyState(final String session, final StoreTask task, final Response response) {
+		final SessionState state = task.getState();
+		response.header(StoreConstants.SESSION_STATE_HEADER, state.name());
+		switch (state) {
+		case PROVISIONING:
+		case COPYING:
+		case DRAINING:
+			final int position = admissionController.getQueuePosition(session);
+			if (position > 0) {
+				response.status(202);
+				return String.format(StoreConstants.QUEUED_RESPONSE, position);
+			}
+			return "Process already started";
+		case DONE:
+			return "Process already finished";
+		case KILLED:
+			response.status(409);
+			return "Process was killed";
+		case FAILED:
+			response.status(409);
+			return "Process failed";
+		default:
+			response.status(409);
+			return "Documents are not resolved yet";
+		}
+	}
 
-				} while (readyReplicas < replicas);
+	/**
+	 * Admits the queued work of a session and starts its copy servers once
+	 * admitted. The session may be preempted by sessions of a higher priority,
+	 * it is admitted again with its remaining work.
+	 *
+	 * @return 0 if the session was started, otherwise its position in the queue
+	 */
+	private int admitCopy(final String session, final StoreTask task, final E creds, final String targetDir,
+			final Priority priority, final long bytes) {
+		final int files = pendingWork.get(session).size();
+		final int replicas = Math.max(1, replicationChooser(files));
+		return admissionController.admit(session, priority, replicas, bytes, true, () -> {
+			podCopySrvTaks.putIfAbsent(session, new String[0]);
+			copySrvResources.put(session, CopySrvResources.forWorkload(files, bytes, replicas));
+			copyTargets.put(session, new CopyBatch<>(session, task.getUserId(), creds, targetDir,
+					Collections.<String>emptyList()));
+			orchestrationExecutor.execute(() -> {
+				boolean requeued = false;
+				try {
+					if (task.getState().isTerminal()) {
+						// killed before it was admitted
+						return;
+					}
+					requeued = copyBackend().run(session, pendingWork.get(session), replicas)
+							&& !task.getState().isTerminal();
+					if (requeued) {
+						task.advance(SessionState.PROVISIONING);
+						admissionController.release(session);
+						admitCopy(session, task, creds, targetDir, priority, bytes);
+					}
+				} catch (InterruptedException e) {
+					LOGGER.error(e.toString());
+					Thread.currentThread().interrupt();
+				} finally {
+					if (!requeued) {
+						if (task.advance(SessionState.DONE) == null) {
+							task.advance(SessionState.FAILED);
+						}
+						applyRates(bandwidthAllocator.unregisterSession(session));
+						copyTargets.remove(session);
+						copySrvResources.remove(session);
+						podCopySrvTaks.remove(session);
+						listingCache.invalidate(creds, targetDir);
+						pendingWork.remove(session);
+						finishedProgress.remove(session);
+						preemptedSessions.remove(session);
+						copySrvEvents.forget(session);
+						downloadCache.finish(session);
+						admissionController.release(session);
+					}
+				}
+			});
+		}, () -> {
+			preemptedSessions.add(session);
+			copyBackend().wakeUp(session);
+		});
+	}
 
-				//System.out.println("Start getcopy: "+start+"\n Pods fertig: "+System.currentTimeMillis());
-				pods = k8sApi.listNamespacedPod(NAMESPACE, true, null, null, null,
-						"app=" + deployment.getMetadata().getName(), null, null, null, null);
+	/**
+	 * Distributes the queued work of a session to its copy servers. Copy servers
+	 * which finished their work are drained while the others are still running.
+	 * If new work is queued, the deployment is scaled up according to the
+	 * scaling strategy. Blocks until all work is done, the session is killed or
+	 * the session is preempted.
+	 *
+	 * @return true if the session was preempted and its remaining work was queued again
+	 */
+	private boolean orchestrateCopy(final String session, final StoreTask task, final String deploymentName,
+			final E creds, final String targetDir, final int replicas) throws InterruptedException {
+		final Map<String, String> busyPods = new HashMap<>(); // pod name -> IP
+		final Map<String, List<String>> assigned = new HashMap<>(); // pod name -> URLs
+		try {
+			final Queue<String> queue = pendingWork.get(session);
+			final List<V1Pod> initialPods = copySrvController.awaitReadyPods(deploymentName, replicas,
+					StoreConstants.COPYSRV_STARTUP_TIMEOUT_SECONDS * 1000);
+			if (initialPods == null || task.getState().isTerminal()) {
+				// killed while waiting for the pods
+				return false;
+			}
+			if (initialPods.isEmpty()) {
+				// The session fails and releases its admission
+				LOGGER.error("No copy server of session {} started.", session);
+				task.advance(SessionState.FAILED);
+				killCopySrvDeployment(deploymentName);
+				return false;
+			}
+			final Set<String> usedPods = new HashSet<>();
+			if (!dispatch(session, deploymentName, creds, targetDir, initialPods, queue, busyPods, assigned,
+					usedPods)) {
+				return false;
+			}
+			task.advance(SessionState.COPYING);
+
+			// Copy servers report finished batches, polling is only a fallback then
+			final long pollMillis = isCallbackEnabled() ? StoreConstants.COPYSRV_POLL_FALLBACK_MILLIS
+					: StoreConstants.COPYSRV_POLL_MILLIS;
+			long lastPoll = System.currentTimeMillis();
+			long lastTune = lastPoll;
+			boolean scaleUpRequested = false;
+			while (copySrvController.isDesired(deploymentName)) {
+				final long seen = copySrvEvents.generation();
+				if (preemptedSessions.remove(session) && checkpoint(session, deploymentName, queue, busyPods, assigned)) {
+					return true;
+				}
+				final boolean poll = System.currentTimeMillis() - lastPoll >= pollMillis;
+				if (poll) {
+					lastPoll = System.currentTimeMillis();
+				}
+				// Warteschleife: fertige Pods werden sofort entfernt
+				for (Iterator<Map.Entry<String, String>> it = busyPods.entrySet().iterator(); it.hasNext();) {
+					final Map.Entry<String, String> pod = it.next();
+					if (copySrvEvents.consumeBatchFinished(pod.getValue()) || poll && taskDoneCall(pod.getValue())) {
+						keepFinalProgress(session, pod.getValue());
+						concurrencyTuner.forget(pod.getValue());
+						applyRates(bandwidthAllocator.unregister(pod.getValue()));
+						downloadCache.complete(session, reportedFinished(session, assigned.get(pod.getKey())));
+						hostLimiter.release(HostLimiter.hostsOf(assigned.get(pod.getKey())), true);
+						copySrvController.drainPod(deploymentName, pod.getKey());
+						admissionController.releaseReplicas(session, 1);
+						it.remove();
+					}
+				}
 
-				String[] podIP = new String[pods.getItems().size()];
-				int count = 0;
-				for (V1Pod pod : pods.getItems()) {
-					podIP[count++] = pod.getStatus().getPodIP(); // jetzt habe ich die IPs der einezenen Pods
+				if (isTuningEnabled() && System.currentTimeMillis() - lastTune >= StoreConstants.COPYSRV_TUNE_MILLIS) {
+					lastTune = System.currentTimeMillis();
+					tuneConcurrency(session, busyPods, assigned);
 				}
 
-				podCopySrvTaks.put(session, podIP);
-				
-				List<String> inputStreamUrl = new ArrayList<String>();
-				for (ResearchDataInputStream inputStream : cacheElement.getTask().getElements()) {
-					inputStreamUrl.add(inputStream.getUrl().toString());
-				}
-				final int podSize = podIP.length;
-				final int elementsize = inputStreamUrl.size();
-
-				// hier werden die Aufgaben verteilt
-				for (int i = 0; i < podSize; i++) {
-					List<String> sublist = new ArrayList<String>();
-					for (int j = i; j < elementsize; j += podSize) {
-						sublist.add(inputStreamUrl.get(j));
+				final List<V1Pod> freshPods = new ArrayList<>();
+				for (V1Pod pod : copySrvController.getReadyPods(deploymentName)) {
+					if (!usedPods.contains(pod.getMetadata().getName())) {
+						freshPods.add(pod);
 					}
-					// so stelle ich sicher ob der dienst bereit ist
-					while (taskDoneCall(podIP[i])) {
-						Thread.sleep(1000 / 4);
+				}
+				if (queue.isEmpty()) {
+					// Pods requested for work which was already distributed
+					for (V1Pod pod : freshPods) {
+						usedPods.add(pod.getMetadata().getName());
+						copySrvController.drainPod(deploymentName, pod.getMetadata().getName());
+						admissionController.releaseReplicas(session, 1);
 					}
-					boolean result = copyFile(creds, targetDir, sublist, podIP[i]);
-					if (!result) {
-						killCopySrvDeployment(deployment.getMetadata().getName());
-						podCopySrvTaks.remove(session);
-						killProgress = true;
+					if (busyPods.isEmpty() && closeQueue(session, task, queue)) {
+						break;
 					}
-				}
-				// hier wird der CopySrv vernichtet: erst das deployment,die Pods und dann der
-				// map eintrag
-
-				// Warteschleife bis die Pods fertig sind und dann werden sie vernichtet
-				if (!killProgress) {
-					for (V1Pod pod : pods.getItems()) {
-						while (!taskDoneCall(pod.getStatus().getPodIP())) {
-							Thread.sleep(1000 * 2);
-						}
+				} else if (!freshPods.isEmpty()) {
+					if (!dispatch(session, deploymentName, creds, targetDir, freshPods, queue, busyPods, assigned,
+							usedPods)) {
+						return false;
 					}
-					killCopySrvDeployment(deployment.getMetadata().getName());
-					podCopySrvTaks.remove(session);
+					scaleUpRequested = false;
+				} else if (!scaleUpRequested && hasHostCapacity(queue)) {
+					// Retried in the next pass if no replicas are available
+					final int granted = admissionController.reserveReplicas(session, replicationChooser(queue.size()));
+					if (granted > 0) {
+						copySrvController.setDesiredReplicas(deploymentName,
+								copySrvController.getDesiredReplicas(deploymentName) + granted);
+						scaleUpRequested = true;
+					}
+				}
+				// New ready pods, callbacks and new documents end the wait early
+				long untilPoll = lastPoll + pollMillis - System.currentTimeMillis();
+				if (isTuningEnabled() && !busyPods.isEmpty()) {
+					untilPoll = Math.min(untilPoll, lastTune + StoreConstants.COPYSRV_TUNE_MILLIS
+							- System.currentTimeMillis());
 				}
-			} catch (ApiException | InterruptedException e) {
-				LOGGER.error(e.toString());
-				response.status(409); // Error
-				e.printStackTrace();
+				final boolean awaitingCapacity = !queue.isEmpty() && !scaleUpRequested;
+				copySrvEvents.await(seen, awaitingCapacity ? Math.min(untilPoll, StoreConstants.COPYSRV_POLL_MILLIS)
+						: untilPoll);
 			}
-		}).start();
-		return "";
+
+			if (copySrvController.isDesired(deploymentName)) {
+				killCopySrvDeployment(deploymentName);
+			}
+			return false;
+		} finally {
+			// Connections of copy servers which did not finish
+			for (Map.Entry<String, String> pod : busyPods.entrySet()) {
+				concurrencyTuner.forget(pod.getValue());
+				hostLimiter.release(HostLimiter.hostsOf(assigned.get(pod.getKey())), false);
+			}
+		}
 	}
 
 	/**
-	 * 
-	 * @param podIP
-	 * @return if the getTaskDone Call answer 200 the methode return false if the
-	 *         service is unavaiable or the task is done the method return true
+	 * Checks whether or not further copy servers could start on the queued work
+	 * without exceeding the connection limits of its hosts.
 	 */
-	private boolean taskDoneCall(String podIP) {
-		boolean value = true;
-		try {
-			HttpURLConnection con;
-			con = (HttpURLConnection) new URL("http", podIP, StoreConstants.COPYSRV_CONTAINERPORT, "/taskDone")
-					.openConnection();
-			con.setRequestMethod("GET");
-			value = con.getResponseCode() != HttpURLConnection.HTTP_OK;
-		} catch (IOException e) {
-			//e.printStackTrace();
+	private boolean hasHostCapacity(final Queue<String> queue) {
+		for (String host : HostLimiter.hostsOf(queue)) {
+			if (hostLimiter.available(host) > 0) {
+				return true;
+			}
 		}
-		return value;
+		return false;
 	}
 
 	/**
-	 * send the inputStreamUrl via Post-request to the copySrv and ignore the
-	 * http-response the getCopy controll the Downloadstatus and kill the Services
-	 * if they finish or fail
-	 * 
-	 * @param creds
-	 * @param targetDir
-	 * @param inputStreamUrl
-	 * @param hostIP
-	 * @return
+	 * Stops the copy servers of a preempted session. Files the copy servers
+	 * reported as finished are kept, all other files are queued again.
+	 *
+	 * @return true if the copy servers were stopped, false if all work is finished anyway
 	 */
-	protected boolean copyFile(final E creds, final String targetDir, final List<String> inputStreamUrl,
-			final String hostIP) {
-		final URL url;
-		final Map<String, Object> send = new HashMap<>();
-		send.put("cred", creds);
-		send.put("targetDir", targetDir);
-		send.put("inputStreamUrl", inputStreamUrl);
-
-		try {
-			String copySrvIP = hostIP;
-			int port = StoreConstants.COPYSRV_CONTAINERPORT;
-			url = new URL("http", copySrvIP, port, "/copy");
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("POST");
-			con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-			con.setDoInput(true);
-			con.setDoOutput(true);
-			// body
-			String json = options.getCredentialSerialzer().toJson(send);
-			// da sende ich den body
-			try (OutputStream output = con.getOutputStream()) {
-				output.write(json.getBytes("utf-8"));
-				
-				output.flush();
-				output.close(); // gibt die ressourcen wieder frei
-				new Thread(() -> {
-					try {
-						con.getResponseCode();
-						con.disconnect();
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}}).start();
+	private boolean checkpoint(final String session, final String deploymentName, final Queue<String> queue,
+			final Map<String, String> busyPods, final Map<String, List<String>> assigned) {
+		final List<String> unfinished = new ArrayList<>();
+		final List<JsonElement> finished = new ArrayList<>();
+		for (Map.Entry<String, String> pod : busyPods.entrySet()) {
+			final Set<String> finishedFiles = new HashSet<>();
+			try {
+				for (JsonElement element : readPodProgress(pod.getValue(), session)) {
+					final JsonObject file = element.getAsJsonObject();
+					if (file.has("fileName") && file.has("state")
+							&& CopyStatus.FINISHED.toString().equals(file.get("state").getAsString())) {
+						finishedFiles.add(file.get("fileName").getAsString());
+						finished.add(element);
+					}
+				}
+			} catch (IOException | JsonParseException | IllegalStateException e) {
+				// Nothing is known, the whole batch is copied again
+				LOGGER.debug("Progress of preempted copy server {} not available: {}", pod.getValue(), e.toString());
 			}
-			
-		} catch (ProtocolException | MalformedURLException e1) {
-			e1.printStackTrace();
-			LOGGER.error("Error while copying files.", e1);
-			return false;
-		} catch (IOException | NullPointerException e) {
-			LOGGER.error("Error while copying files.", e);
+			finishedFiles.addAll(copySrvEvents.getFinishedFiles(session));
+			for (String url : assigned.get(pod.getKey())) {
+				try {
+					if (!finishedFiles.contains(new URL(url).getFile())) {
+						unfinished.add(url);
+					}
+				} catch (MalformedURLException e) {
+					unfinished.add(url);
+				}
+			}
+		}
+		if (unfinished.isEmpty() && queue.isEmpty()) {
 			return false;
 		}
+		LOGGER.info("Session {} preempted, {} files are queued again.", session, unfinished.size());
+		copySrvController.setDesiredReplicas(deploymentName, 0);
+		finishedProgress.computeIfAbsent(session, key -> new CopyOnWriteArrayList<>()).addAll(finished);
+		podCopySrvTaks.put(session, new String[0]);
+		queue.addAll(unfinished);
 		return true;
 	}
 
 	/**
-	 * @param deploymentName
+	 * Returns the backend copying the data of sessions.
+	 */
+	private CopyBackend copyBackend() {
+		return getMultipartUpload() != null ? uploadBackend : copyBackend;
+	}
+
+	/**
+	 * Whether the data of sessions is copied by the shared fleet of copy servers.
+	 */
+	private boolean useFleet() {
+		return fleet != null && getMultipartUpload() == null;
+	}
+
+	/**
+	 * Builds a progress element of a file not copied by a copy server.
+	 */
+	private static JsonObject buildProgress(final String fileName, final int progressInPercent,
+			final CopyStatus state) {
+		final JsonObject file = new JsonObject();
+		file.addProperty("fileName", fileName);
+		file.addProperty("progressInPercent", progressInPercent);
+		file.addProperty("state", state.toString());
+		return file;
+	}
+
+	/**
+	 * Uploads the data of a session with the multipart upload of the store, one
+	 * file after another with parallel parts.
+	 */
+	private class UploadBackend implements CopyBackend {
+
+		private final MultipartUploader uploader = new MultipartUploader(StoreConstants.MULTIPART_THREADS,
+				StoreConstants.MULTIPART_PART_BYTES, StoreConstants.MULTIPART_BUFFERS,
+				StoreConstants.MULTIPART_RETRIES, StoreConstants.MULTIPART_RETRY_MILLIS);
+		private final Map<String, ResearchDataInputStream> running = new ConcurrentHashMap<>();
+		private final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public boolean run(final String session, final Queue<String> queue, final int replicas)
+				throws InterruptedException {
+			final CopyBatch<E> target = copyTargets.get(session);
+			final CacheElement<E> cacheElement = cacheMap.get(session);
+			if (target == null || cacheElement == null || queue == null) {
+				return false;
+			}
+			final IMultipartUpload<E> upload = getMultipartUpload();
+			cacheElement.getTask().advance(SessionState.COPYING);
+			try {
+				while (!cancelled.contains(session)) {
+					// Preemption takes effect between files
+					if (preemptedSessions.remove(session)) {
+						return true;
+					}
+					final String url = queue.poll();
+					if (url == null) {
+						if (closeQueue(session, cacheElement.getTask(), queue)) {
+							break;
+						}
+						continue;
+					}
+					// Streams only exist while their document is uploaded
+					final StoreTask task = cacheElement.getTask();
+					final int index;
+					final ResearchDataInputStream stream;
+					synchronized (task) {
+						index = task.getDocuments().indexOf(url);
+						stream = index < 0 ? null : task.getDocuments().open(index);
+					}
+					if (stream == null) {
+						continue;
+					}
+					final String name = stream.getName().substring(stream.getName().lastIndexOf('/') + 1);
+					final String targetPath = target.getTargetDir().endsWith("/") ? target.getTargetDir() + name
+							: target.getTargetDir() + "/" + name;
+					running.put(session, stream);
+					try (ResearchDataInputStream input = stream) {
+						uploader.upload(upload, target.getCredentials(), targetPath, input, stream.getSize());
+						stream.setStatus(CopyStatus.FINISHED);
+					} catch (IOException e) {
+						LOGGER.error("Error while uploading " + url, e);
+						stream.setStatus(CopyStatus.ERROR);
+					} finally {
+						running.remove(session);
+						synchronized (task) {
+							task.getDocuments().update(index, stream);
+						}
+					}
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+					finishedProgress.computeIfAbsent(session, key -> new CopyOnWriteArrayList<>())
+							.add(progressOf(stream));
+				}
+				return false;
+			} finally {
+				cancelled.remove(session);
+			}
+		}
+
+		@Override
+		public void cancel(final String session) {
+			if (copyTargets.containsKey(session)) {
+				cancelled.add(session);
+			}
+		}
+
+		@Override
+		public void wakeUp(final String session) {
+			// The queue is read after each file
+		}
+
+		@Override
+		public boolean hasSynced() {
+			return true;
+		}
+
+		/**
+		 * Returns the progress of the file being uploaded for a session.
+		 */
+		private List<JsonElement> getRunningProgress(final String session) {
+			final ResearchDataInputStream stream = running.get(session);
+			return stream == null ? Collections.<JsonElement>emptyList()
+					: Collections.<JsonElement>singletonList(progressOf(stream));
+		}
+
+		private JsonObject progressOf(final ResearchDataInputStream stream) {
+			final JsonObject file = buildProgress(stream.getName(), stream.getProgressInPercent(),
+					stream.getStatus());
+			if (stream.getChecksum() != null) {
+				file.addProperty("checksum", stream.getChecksum());
+			}
+			return file;
+		}
+	}
+
+	/**
+	 * Runs the copy servers of a session as a deployment, which is scaled while
+	 * copying and deleted afterwards.
+	 */
+	private class DeploymentBackend implements CopyBackend {
+
+		@Override
+		public boolean run(final String session, final Queue<String> queue, final int replicas)
+				throws InterruptedException {
+			final CopyBatch<E> target = copyTargets.get(session);
+			final CacheElement<E> cacheElement = cacheMap.get(session);
+			if (target == null || cacheElement == null) {
+				return false;
+			}
+			// deployment wird der Session zugeordnet, der Controller erstellt es
+			final String deploymentName = options.getCopySrvDeploymentName() + session;
+			copySrvController.setDesiredReplicas(deploymentName, replicas);
+			return orchestrateCopy(session, cacheElement.getTask(), deploymentName, target.getCredentials(),
+					target.getTargetDir(), replicas);
+		}
+
+		@Override
+		public void cancel(final String session) {
+			killCopySrvDeployment(options.getCopySrvDeploymentName() + session);
+		}
+
+		@Override
+		public void wakeUp(final String session) {
+			copySrvEvents.signal();
+		}
+
+		@Override
+		public boolean hasSynced() {
+			return copySrvController.hasSynced();
+		}
+	}
+
+	/**
+	 * Connects the shards of the job backend to the progress of their sessions.
+	 */
+	private class JobListener implements CopySrvJobBackend.Listener {
+
+		@Override
+		public void shardRunning(final String session, final String podIP) {
+			final CacheElement<E> cacheElement = cacheMap.get(session);
+			if (cacheElement != null) {
+				cacheElement.getTask().advance(SessionState.COPYING);
+			}
+			if (bandwidthAllocator.isEnabled() && cacheElement != null) {
+				applyRates(bandwidthAllocator.register(podIP, session, cacheElement.getTask().getUserId()));
+			}
+			podCopySrvTaks.computeIfPresent(session, (key, known) -> {
+				if (Arrays.asList(known).contains(podIP)) {
+					return known;
+				}
+				final String[] merged = Arrays.copyOf(known, known.length + 1);
+				merged[known.length] = podIP;
+				return merged;
+			});
+		}
+
+		@Override
+		public void shardFinished(final String session, final List<String> urls, final boolean succeeded) {
+			// The pods of finished jobs are gone, their progress follows from the job status
+			final List<JsonElement> progress = new ArrayList<>();
+			for (String url : urls) {
+				String fileName;
+				try {
+					fileName = new URL(url).getFile();
+				} catch (MalformedURLException e) {
+					fileName = url;
+				}
+				progress.add(buildProgress(fileName, succeeded ? 100 : 0,
+						succeeded ? CopyStatus.FINISHED : CopyStatus.ERROR));
+			}
+			finishedProgress.computeIfAbsent(session, key -> new CopyOnWriteArrayList<>()).addAll(progress);
+			if (succeeded) {
+				downloadCache.complete(session, urls);
+			}
+		}
+
+		@Override
+		public boolean close(final String session) {
+			final CacheElement<E> cacheElement = cacheMap.get(session);
+			final Queue<String> queue = pendingWork.get(session);
+			return cacheElement == null || queue == null || closeQueue(session, cacheElement.getTask(), queue);
+		}
+
+		@Override
+		public boolean preempted(final String session) {
+			return preemptedSessions.remove(session);
+		}
+	}
+
+	/**
+	 * Returns the copy request of a shard, fetched by the pod of a copy job.
+	 *
+	 * @return the body of the copy request, null if the shard does not exist
+	 */
+	private String getShardPayload(final String session, final int index) {
+		final CopyBatch<E> target = copyTargets.get(session);
+		final List<String> urls = jobBackend == null ? null : jobBackend.getShard(session, index);
+		if (target == null || urls == null) {
+			return null;
+		}
+		return buildCopyPayload(target.getCredentials(), target.getTargetDir(), urls, session, null, 0);
+	}
+
+	/**
+	 * Stops accepting documents for a session, unless some were added meanwhile.
+	 *
+	 * @return true if the queue was closed, false if it is not empty
+	 */
+	private boolean closeQueue(final String session, final StoreTask task, final Queue<String> queue) {
+		synchronized (task) {
+			if (queue.isEmpty() && pendingWork.remove(session, queue)) {
+				// No documents can be added anymore
+				task.advance(SessionState.DRAINING);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Splits the queued work between the given pods and sends it to them.
+	 *
+	 * @return false if the work could not be sent and the session was killed
+	 */
+	private boolean dispatch(final String session, final String deploymentName, final E creds,
+			final String targetDir, final List<V1Pod> pods, final Queue<String> queue,
+			final Map<String, String> busyPods, final Map<String, List<String>> assigned,
+			final Set<String> usedPods) throws InterruptedException {
+		final List<String> inputStreamUrl = new ArrayList<String>();
+		String url;
+		while ((url = queue.poll()) != null) {
+			inputStreamUrl.add(url);
+		}
+
+		// Each host gets as many pods as its connection limit allows, the rest waits in the queue
+		final Map<String, List<String>> byHost = new LinkedHashMap<>();
+		for (String inputUrl : inputStreamUrl) {
+			byHost.computeIfAbsent(HostLimiter.hostOf(inputUrl), key -> new ArrayList<>()).add(inputUrl);
+		}
+		final List<List<String>> sublists = new ArrayList<>();
+		for (int i = 0; i < pods.size(); i++) {
+			sublists.add(new ArrayList<String>());
+		}
+		int next = 0;
+		for (Map.Entry<String, List<String>> host : byHost.entrySet()) {
+			final int slots = Math.min(hostLimiter.available(host.getKey()), pods.size());
+			if (slots == 0) {
+				queue.addAll(host.getValue());
+				continue;
+			}
+			// Small files stay together, so one pod fetches them over a single connection
+			final List<List<String>> bundles = FileBundler.bundle(host.getValue());
+			for (int j = 0; j < bundles.size(); j++) {
+				sublists.get((next + j % slots) % pods.size()).addAll(bundles.get(j));
+			}
+			for (int j = 0; j < Math.min(slots, bundles.size()); j++) {
+				hostLimiter.acquire(host.getKey());
+			}
+			next = (next + slots) % pods.size();
+		}
+
+		final List<String> podIP = new ArrayList<>();
+		for (int i = 0; i < pods.size(); i++) {
+			if (!sublists.get(i).isEmpty()) {
+				podIP.add(pods.get(i).getStatus().getPodIP()); // jetzt habe ich die IPs der einezenen Pods
+			}
+		}
+		podCopySrvTaks.merge(session, podIP.toArray(new String[0]), (known, added) -> {
+			final String[] merged = Arrays.copyOf(known, known.length + added.length);
+			System.arraycopy(added, 0, merged, known.length, added.length);
+			return merged;
+		});
+
+		// hier werden die Aufgaben verteilt
+		for (int i = 0; i < pods.size(); i++) {
+			final String podName = pods.get(i).getMetadata().getName();
+			final String ip = pods.get(i).getStatus().getPodIP();
+			final List<String> sublist = sublists.get(i);
+			if (sublist.isEmpty()) {
+				if (queue.isEmpty()) {
+					usedPods.add(podName);
+					copySrvController.drainPod(deploymentName, podName);
+					admissionController.releaseReplicas(session, 1);
+				}
+				// otherwise the pod stays for work held back by the host limits
+				continue;
+			}
+			usedPods.add(podName);
+			// so stelle ich sicher ob der dienst bereit ist, READY callbacks beenden das Warten
+			while (taskDoneCall(ip)) {
+				final CacheElement<E> cacheElement = cacheMap.get(session);
+				if (cacheElement == null || cacheElement.getTask().getState().isTerminal()
+						|| !copySrvController.isDesired(deploymentName)) {
+					// killed during startup, the copy server is gone and never answers
+					for (int j = i; j < pods.size(); j++) {
+						hostLimiter.release(HostLimiter.hostsOf(sublists.get(j)), false);
+					}
+					return false;
+				}
+				copySrvEvents.await(copySrvEvents.generation(), 1000 / 4);
+			}
+			if (!copyFile(creds, targetDir, sublist, ip, session)) {
+				for (int j = i; j < pods.size(); j++) {
+					hostLimiter.release(HostLimiter.hostsOf(sublists.get(j)), false);
+				}
+				killCopySrvDeployment(deploymentName);
+				podCopySrvTaks.remove(session);
+				return false;
+			}
+			busyPods.put(podName, ip);
+			assigned.put(podName, sublist);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends a batch of the shared fleet to a copy server.
+	 */
+	private boolean sendBatch(final CopyBatch<E> batch, final String podIP) {
+		podCopySrvTaks.merge(batch.getSessionId(), new String[] { podIP }, (known, added) -> {
+			if (Arrays.asList(known).contains(podIP)) {
+				return known;
+			}
+			final String[] merged = Arrays.copyOf(known, known.length + 1);
+			merged[known.length] = podIP;
+			return merged;
+		});
+		return copyFile(batch.getCredentials(), batch.getTargetDir(), batch.getUrls(), podIP,
+				batch.getSessionId());
+	}
+
+	/**
+	 * Cleans up after all batches of a session were copied by the shared fleet.
+	 */
+	private void finishFleetSession(final CopyBatch<E> session) {
+		final CacheElement<E> cacheElement = cacheMap.get(session.getSessionId());
+		if (cacheElement != null) {
+			cacheElement.getTask().advance(SessionState.DRAINING);
+			cacheElement.getTask().advance(SessionState.DONE);
+		}
+		applyRates(bandwidthAllocator.unregisterSession(session.getSessionId()));
+		admissionController.release(session.getSessionId());
+		downloadCache.finish(session.getSessionId());
+		podCopySrvTaks.remove(session.getSessionId());
+		listingCache.invalidate(session.getCredentials(), session.getTargetDir());
+	}
+
+	/**
+	 * Adjusts the parallel transfers of the busy copy servers of a session to
+	 * their throughput and failures since the last tuning.
+	 */
+	private void tuneConcurrency(final String session, final Map<String, String> busyPods,
+			final Map<String, List<String>> assigned) {
+		for (Map.Entry<String, String> pod : busyPods.entrySet()) {
+			final Map<String, String> urlsByFile = new HashMap<>();
+			for (String url : assigned.get(pod.getKey())) {
+				try {
+					urlsByFile.put(new URL(url).getFile(), url);
+				} catch (MalformedURLException e) {
+					LOGGER.debug("Invalid URL {}", url);
+				}
+			}
+			long bytes = 0;
+			int errors = 0;
+			try {
+				for (JsonElement element : readPodProgress(pod.getValue(), session)) {
+					final JsonObject file = element.getAsJsonObject();
+					if (file.has("state") && CopyStatus.ERROR.toString().equals(file.get("state").getAsString())) {
+						errors++;
+					}
+					final String url = file.has("fileName") ? urlsByFile.get(file.get("fileName").getAsString()) : null;
+					final UrlMetadata metadata = url == null ? null : UrlMetadataResolver.getDefault().peek(url);
+					if (metadata != null && metadata.getSize() > 0 && file.has("progressInPercent")) {
+						bytes += (long) (metadata.getSize() * file.get("progressInPercent").getAsDouble() / 100);
+					}
+				}
+			} catch (IOException | IllegalStateException e) {
+				LOGGER.debug("Progress of copy server {} not available: {}", pod.getValue(), e.toString());
+				continue;
+			}
+			final int streams = concurrencyTuner.observe(pod.getValue(), bytes, errors, System.currentTimeMillis());
+			if (streams > 0) {
+				postConcurrency(pod.getValue(), session, streams);
+			}
+		}
+	}
+
+	/**
+	 * Sends a new number of parallel transfers to a copy server.
+	 */
+	private void postConcurrency(final String podIP, final String session, final int streams) {
+		final JsonObject body = new JsonObject();
+		body.addProperty(StoreConstants.SESSION_ID, session);
+		body.addProperty("streams", streams);
+		postToCopySrv(podIP, "/concurrency", body);
+	}
+
+	/**
+	 * Sends changed rates to the copy servers, without blocking the caller.
+	 */
+	private void applyRates(final Map<String, Long> rates) {
+		for (Map.Entry<String, Long> rate : rates.entrySet()) {
+			final JsonObject body = new JsonObject();
+			final Map<String, Long> bandwidth = buildBandwidth(rate.getValue());
+			body.addProperty("bytesPerSecond", bandwidth.get("bytesPerSecond"));
+			body.addProperty("burstBytes", bandwidth.get("burstBytes"));
+			copySrvUpdateExecutor.execute(() -> postToCopySrv(rate.getKey(), "/bandwidth", body));
+		}
+	}
+
+	/**
+	 * Builds the token bucket of a copy server, a rate of 0 is not limited.
+	 */
+	private Map<String, Long> buildBandwidth(final long bytesPerSecond) {
+		final Map<String, Long> bandwidth = new HashMap<>();
+		bandwidth.put("bytesPerSecond", bytesPerSecond);
+		bandwidth.put("burstBytes", bytesPerSecond * StoreConstants.BANDWIDTH_BURST_SECONDS);
+		return bandwidth;
+	}
+
+	/**
+	 * Posts a settings change to a copy server. Copy servers which do not
+	 * support the setting keep their behaviour.
+	 */
+	private void postToCopySrv(final String podIP, final String path, final JsonObject body) {
+		try {
+			final HttpURLConnection con = (HttpURLConnection) new URL("http", podIP,
+					StoreConstants.COPYSRV_CONTAINERPORT, path).openConnection();
+			con.setRequestMethod("POST");
+			con.setDoOutput(true);
+			con.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream output = con.getOutputStream()) {
+				output.write(body.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			if (con.getResponseCode() != HttpURLConnection.HTTP_OK
+					&& con.getResponseCode() != HttpURLConnection.HTTP_NO_CONTENT) {
+				LOGGER.debug("Copy server {} rejected {}: {}", podIP, path, con.getResponseCode());
+			}
+			con.disconnect();
+		} catch (IOException e) {
+			LOGGER.debug("Copy server {} not reached for {}: {}", podIP, path, e.toString());
+		}
+	}
+
+	private boolean isTuningEnabled() {
+		return StoreConstants.COPYSRV_TUNE_MILLIS > 0;
+	}
+
+	/**
+	 * Returns the URLs of a session whose files were reported as finished, by
+	 * completion events or by the kept progress of its copy servers.
+	 */
+	private List<String> reportedFinished(final String session, final List<String> urls) {
+		final Set<String> finishedFiles = new HashSet<>(copySrvEvents.getFinishedFiles(session));
+		for (JsonElement element : finishedProgress.getOrDefault(session, Collections.emptyList())) {
+			if (!element.isJsonObject()) {
+				continue;
+			}
+			final JsonObject file = element.getAsJsonObject();
+			if (file.has("fileName") && file.has("state")
+					&& CopyStatus.FINISHED.toString().equals(file.get("state").getAsString())) {
+				finishedFiles.add(file.get("fileName").getAsString());
+			}
+		}
+		final List<String> finished = new ArrayList<>();
+		for (String url : urls) {
+			try {
+				if (finishedFiles.contains(new URL(url).getFile())) {
+					finished.add(url);
+				}
+			} catch (MalformedURLException e) {
+				// never cached
+			}
+		}
+		return finished;
+	}
+
+	/**
+	 * Keeps the last progress of a copy server before it is drained.
+	 */
+	private void keepFinalProgress(final String session, final String podIP) {
+		try {
+			final List<JsonElement> progress = readPodProgress(podIP, session);
+			finishedProgress.computeIfAbsent(session, key -> new CopyOnWriteArrayList<>()).addAll(progress);
+		} catch (IOException | JsonParseException | IllegalStateException e) {
+			LOGGER.debug("Final progress of copy server {} not available: {}", podIP, e.toString());
+		}
+	}
+
+	/**
+	 * Adds documents to an existing session. If the session is already copying,
+	 * the documents are queued and the copy servers are scaled up accordingly.
+	 */
+	private Object postDocs(Request request, Response response) throws IOException {
+		final String session = request.params(StoreConstants.SESSION_ID);
+		final CacheElement<E> cacheElement = cacheMap.get(session);
+		if (cacheElement == null) {
+			response.status(404);
+			return "Session does not exist.";
+		}
+		final StoreTask task = cacheElement.getTask();
+		final String user = AuthenticatedUser.getName(request, response);
+		if (user == null || !user.equals(task.getUserId())) {
+			response.status(403);
+			return "Session belongs to another user";
+		}
+		if (request.contentLength() > StoreConstants.MAX_PAYLOAD_BYTES) {
+			response.status(413);
+			return "Payload too large";
+		}
+		final long wait = admissionController.tryAcquire(user);
+		if (wait > 0) {
+			response.status(429);
+			response.header("Retry-After", Long.toString((wait + 999) / 1000));
+			return "Too many requests";
+		}
+
+		// Streamed and counted, the documents are only resolved once the list is known to fit
+		final int remaining = StoreConstants.MAX_DOCUMENTS - task.getDocuments().size();
+		final List<URL> resolved = new ArrayList<>();
+		final BoundedInputStream body = new BoundedInputStream(request.raw().getInputStream(),
+				StoreConstants.MAX_PAYLOAD_BYTES);
+		try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				if (resolved.size() >= remaining) {
+					response.status(413);
+					return "Too many documents";
+				}
+				resolved.add(new URL(reader.nextString()));
+			}
+			reader.endArray();
+		} catch (MalformedURLException e) {
+			response.status(400);
+			return "At least one element in docs is not a valid URL";
+		} catch (IOException | IllegalStateException e) {
+			if (body.isLimitExceeded()) {
+				response.status(413);
+				return "Payload too large";
+			}
+			response.status(400);
+			return "Invalid document list";
+		}
+		if (resolved.isEmpty()) {
+			response.status(400);
+			return "Invalid document list";
+		}
+		final List<UrlMetadata> metadata;
+		try {
+			metadata = UrlMetadataResolver.getDefault().resolveAll(resolved);
+		} catch (IOException e) {
+			response.status(400);
+			return "At least one element in docs is not a valid URL";
+		}
+		synchronized (task) {
+			if (task.getState().isTerminal()) {
+				response.status(409);
+				return "Copy process already finished";
+			}
+			if (task.getDocuments().size() + resolved.size() > StoreConstants.MAX_DOCUMENTS) {
+				response.status(413);
+				return "Too many documents";
+			}
+			final Queue<String> queue = pendingWork.get(session);
+			final List<String> urls = new ArrayList<>(resolved.size());
+			for (URL url : resolved) {
+				urls.add(url.toString());
+			}
+			if (useFleet() && task.isStarted()) {
+				if (!fleet.append(session, urls)) {
+					response.status(409);
+					return "Copy process already finished";
+				}
+			} else if (task.isStarted() && queue == null) {
+				response.status(409);
+				return "Copy process already finished";
+			} else if (queue != null) {
+				queue.addAll(urls);
+				copyBackend().wakeUp(session);
+			}
+			for (int i = 0; i < resolved.size(); i++) {
+				task.getDocuments().add(resolved.get(i), metadata.get(i));
+			}
+		}
+		response.status(202);
+		return "";
+	}
+
+	/**
+	 * 
+	 * @param podIP
+	 * @return if the getTaskDone Call answer 200 the methode return false if the
+	 *         service is unavaiable or the task is done the method return true
+	 */
+	private boolean taskDoneCall(String podIP) {
+		boolean value = true;
+		try {
+			HttpURLConnection con;
+			con = (HttpURLConnection) new URL("http", podIP, StoreConstants.COPYSRV_CONTAINERPORT, "/taskDone")
+					.openConnection();
+			con.setRequestMethod("GET");
+			value = con.getResponseCode() != HttpURLConnection.HTTP_OK;
+		} catch (IOException e) {
+			//e.printStackTrace();
+		}
+		return value;
+	}
+
+	/**
+	 * send the inputStreamUrl via Post-request to the copySrv and ignore the
+	 * http-response the getCopy controll the Downloadstatus and kill the Services
+	 * if they finish or fail
+	 * 
+	 * @param creds
+	 * @param targetDir
+	 * @param inputStreamUrl
+	 * @param hostIP
+	 * @return
+	 * @deprecated the session is part of the payload, use
+	 *             {@link #copyFile(ICredentials, String, List, String, String)}.
+	 *             It is still called by the default implementation of the new
+	 *             method, so existing overrides keep working. The session is
+	 *             only known when called through the new method.
+	 */
+	@Deprecated
+	protected boolean copyFile(final E creds, final String targetDir, final List<String> inputStreamUrl,
+			final String hostIP) {
+		return sendCopyRequest(creds, targetDir, inputStreamUrl, hostIP, copySession.get());
+	}
+
+	/**
+	 * send the inputStreamUrl of a session via Post-request to the copySrv. The
+	 * session ID is part of the payload, so copy servers shared between sessions
+	 * can keep the sessions apart. Calls the deprecated
+	 * {@link #copyFile(ICredentials, String, List, String)} by default.
+	 *
+	 * @param creds
+	 * @param targetDir
+	 * @param inputStreamUrl
+	 * @param hostIP
+	 * @param session
+	 * @return false if the request could not be sent
+	 */
+	@SuppressWarnings("deprecation")
+	protected boolean copyFile(final E creds, final String targetDir, final List<String> inputStreamUrl,
+			final String hostIP, final String session) {
+		final String previous = copySession.get();
+		copySession.set(session);
+		try {
+			return copyFile(creds, targetDir, inputStreamUrl, hostIP);
+		} finally {
+			copySession.set(previous);
+		}
+	}
+
+	private boolean sendCopyRequest(final E creds, final String targetDir, final List<String> inputStreamUrl,
+			final String hostIP, final String session) {
+		final URL url;
+		if (session != null && bandwidthAllocator.isEnabled()) {
+			final CacheElement<E> cacheElement = cacheMap.get(session);
+			final Map<String, Long> changed = bandwidthAllocator.register(hostIP, session,
+					cacheElement == null ? "" : cacheElement.getTask().getUserId());
+			// The rate of this copy server is part of its request
+			changed.remove(hostIP);
+			applyRates(changed);
+		}
+		// Reports of a previous batch carry its ID and do not finish this one
+		final long batchId = copySrvEvents.startBatch(hostIP);
+		final String json = buildCopyPayload(creds, targetDir, inputStreamUrl, session, hostIP, batchId);
+
+		try {
+			String copySrvIP = hostIP;
+			int port = StoreConstants.COPYSRV_CONTAINERPORT;
+			url = new URL("http", copySrvIP, port, "/copy");
+			HttpURLConnection con = (HttpURLConnection) url.openConnection();
+			con.setRequestMethod("POST");
+			con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+			con.setDoInput(true);
+			con.setDoOutput(true);
+			// da sende ich den body
+			try (OutputStream output = con.getOutputStream()) {
+				output.write(json.getBytes("utf-8"));
+				
+				output.flush();
+				output.close(); // gibt die ressourcen wieder frei
+				new Thread(() -> {
+					try {
+						con.getResponseCode();
+						con.disconnect();
+					} catch (IOException e) {
+						// TODO Auto-generated catch block
+						e.printStackTrace();
+					}}).start();
+			}
+			
+		} catch (ProtocolException | MalformedURLException e1) {
+			e1.printStackTrace();
+			LOGGER.error("Error while copying files.", e1);
+			return false;
+		} catch (IOException | NullPointerException e) {
+			LOGGER.error("Error while copying files.", e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the body of a copy request, as sent to copy servers and fetched by
+	 * copy jobs. The bandwidth and the batch ID are only included if the copy
+	 * server is known.
+	 */
+	private String buildCopyPayload(final E creds, final String targetDir, final List<String> inputStreamUrl,
+			final String session, final String podIP, final long batchId) {
+		final Map<String, Object> send = new HashMap<>();
+		send.put("cred", creds);
+		send.put("targetDir", targetDir);
+		send.put("inputStreamUrl", inputStreamUrl);
+		send.put(StoreConstants.SESSION_ID, session);
+		if (isCallbackEnabled()) {
+			send.put("callbackUrl", StoreConstants.COPYSRV_CALLBACK_URL + StoreConstants.COPYSRV_EVENTS_PATH);
+			send.put("callbackToken", callbackToken);
+			if (batchId > 0) {
+				// Sent back with BATCH_FINISHED
+				send.put("batchId", batchId);
+			}
+		}
+		// Each copy server counts as one connection per host, see HostLimiter
+		send.put("maxConnectionsPerHost", 1);
+		final List<Map<String, Object>> batches = new ArrayList<>();
+		for (List<String> batch : FileBundler.batches(inputStreamUrl)) {
+			// The files of a batch are pipelined over one keep-alive connection
+			final Map<String, Object> item = new HashMap<>();
+			item.put("urls", batch);
+			if (StoreConstants.SMALL_FILE_ARCHIVE) {
+				item.put("archive", "bundle-" + Integer.toHexString(batch.hashCode()) + ".tar");
+			}
+			batches.add(item);
+		}
+		if (!batches.isEmpty()) {
+			send.put("batches", batches);
+		}
+		if (isTuningEnabled()) {
+			// The store service adjusts the number within these bounds via /concurrency
+			final Map<String, Object> concurrency = new HashMap<>();
+			concurrency.put("policy", "aimd");
+			concurrency.put("initial", concurrencyTuner.getInitialStreams());
+			concurrency.put("min", concurrencyTuner.getMinStreams());
+			concurrency.put("max", concurrencyTuner.getMaxStreams());
+			send.put("concurrency", concurrency);
+		}
+		final ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.fromName(StoreConstants.CHECKSUM_ALGORITHM);
+		if (checksumAlgorithm != null) {
+			// Computed inline while copying, compared here once reported in the progress
+			final Map<String, Object> checksum = new HashMap<>();
+			checksum.put("algorithm", checksumAlgorithm.getName());
+			final Map<String, String> expected = new HashMap<>();
+			for (String url : inputStreamUrl) {
+				final UrlMetadata metadata = UrlMetadataResolver.getDefault().peek(url);
+				if (metadata != null && metadata.getDigest(checksumAlgorithm) != null) {
+					expected.put(url, metadata.getDigest(checksumAlgorithm));
+				}
+			}
+			checksum.put("expected", expected);
+			send.put("checksum", checksum);
+		}
+		if (podIP != null && bandwidthAllocator.isEnabled()) {
+			send.put("bandwidth", buildBandwidth(bandwidthAllocator.getRate(podIP)));
+		}
+		if (session != null && isDownloadCacheEnabled()) {
+			send.put("cache", buildCacheInstructions(session, inputStreamUrl));
+		}
+		return options.getCredentialSerialzer().toJson(send);
+	}
+
+	/**
+	 * Builds the copy server deployment, it is created by the controller.
+	 *
+	 * @param deploymentName
 	 * @param numberOfReplicas
 	 * @return ExtensionsV1beta1Deployment
-	 * @throws ApiException
 	 */
-	private ExtensionsV1beta1Deployment createCopySrvDeployment(String deploymentName, int numberOfReplicas)
-			throws ApiException {
-		ExtensionsV1beta1Api extensionV1Api = new ExtensionsV1beta1Api();
-		extensionV1Api.setApiClient(k8sApi.getApiClient());
-		ExtensionsV1beta1Deployment result = null;
+	private ExtensionsV1beta1Deployment buildCopySrvDeployment(String deploymentName, int numberOfReplicas) {
 		// hier wird das Deployment wie in der YAML definiert
 		ExtensionsV1beta1Deployment body = new ExtensionsV1beta1Deployment();
 		V1ObjectMeta metadata = new V1ObjectMeta();
 		metadata.name(deploymentName);
+		Map<String, String> labelsMetadata = new HashMap<>();
+		labelsMetadata.put("app", deploymentName);
+		labelsMetadata.put("copySrv", options.getCopySrvDeploymentName());
+		metadata.setLabels(labelsMetadata);
 		body.apiVersion("extensions/v1beta1"); // wie das YAML-Format gestaltetist
 		body.kind("Deployment");
 		body.setMetadata(metadata);
@@ -524,19 +1872,38 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 		ExtensionsV1beta1DeploymentSpec spec = new ExtensionsV1beta1DeploymentSpec();
 		// zu beginn soll es eine INstanz geben
 		spec.setReplicas(numberOfReplicas);
+		spec.setTemplate(buildCopySrvPodTemplate(deploymentName,
+				deploymentName.substring(options.getCopySrvDeploymentName().length())));
+		body.setSpec(spec);
+		return body;
+	}
+
+	/**
+	 * Builds the pod template of the copy servers, shared by deployments and jobs.
+	 *
+	 * @param name the name of the deployment or job, used as app label
+	 * @param session the session whose workload sizes the pods
+	 * @return V1PodTemplateSpec
+	 */
+	private V1PodTemplateSpec buildCopySrvPodTemplate(String name, String session) {
 		V1PodTemplateSpec template = new V1PodTemplateSpec();
 		V1ObjectMeta metadataTemplateSpec = new V1ObjectMeta();
 		// template vom spec dort wird auch das ContainerImage angegeben
-		metadataTemplateSpec.name(deploymentName);
+		metadataTemplateSpec.name(name);
 		Map<String, String> labelsMetadataTemplateSpec = new HashedMap();
-		labelsMetadataTemplateSpec.put("app", deploymentName);
+		labelsMetadataTemplateSpec.put("app", name);
 		labelsMetadataTemplateSpec.put("copySrv", options.getCopySrvDeploymentName());
 		metadataTemplateSpec.setLabels(labelsMetadataTemplateSpec);
 		template.setMetadata(metadataTemplateSpec);
 		V1PodSpec specTemplateSpec = new V1PodSpec();
 		V1Container containersItem = new V1Container();
-		containersItem.name(deploymentName);
+		containersItem.name(name);
 		containersItem.setImage(options.getCopySrvImageName());
+		// Sessions without known workload, like the fleet, get the resources of full buffers
+		containersItem.setResources(copySrvResources.getOrDefault(session,
+				CopySrvResources.forWorkload(-1, -1, 1)));
+		specTemplateSpec.setNodeSelector(copySrvPlacement.getNodeSelector());
+		specTemplateSpec.setAffinity(copySrvPlacement.getAffinity(options.getVolume()));
 
 		// JupyterHubCopySrv braucht die Pfade von dem Persisten VolumeClaim zum
 		// Speichern
@@ -549,100 +1916,141 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 			specTemplateSpec.addVolumesItem(options.getVolume());
 			
 		}
+		// Gemeinsamer Download-Cache aller copySrvs, falls er ein eigenes Volume hat
+		if (StoreConstants.DOWNLOAD_CACHE_MAX_BYTES > 0 && !StoreConstants.DOWNLOAD_CACHE_CLAIM.isEmpty()) {
+			containersItem.addVolumeMountsItem(new V1VolumeMount().name("download-cache")
+					.mountPath(StoreConstants.DOWNLOAD_CACHE_PATH));
+			specTemplateSpec.addVolumesItem(new V1Volume().name("download-cache").persistentVolumeClaim(
+					new V1PersistentVolumeClaimVolumeSource().claimName(StoreConstants.DOWNLOAD_CACHE_CLAIM)));
+		}
 		template.setSpec(specTemplateSpec);
 		V1ContainerPort portsItem = new V1ContainerPort();
 		portsItem.setContainerPort(StoreConstants.COPYSRV_CONTAINERPORT);
 		containersItem.addPortsItem(portsItem);
 		specTemplateSpec.addContainersItem(containersItem);
 
-		spec.setTemplate(template);
-		body.setSpec(spec);
-		
-		result = extensionV1Api.createNamespacedDeployment(NAMESPACE, body, null, null, null);
-		if(result==null) {
-			LOGGER.error("der Body des Fehlerhaften Deployments: " +body.toString());
-		}
-		return result;
+		return template;
+	}
+
+	/**
+	 * Builds the pod template of a copy job. The pod fetches its shard from this
+	 * service and terminates once the shard is copied.
+	 */
+	private V1PodTemplateSpec buildCopySrvJobTemplate(String jobName, String session, int index) {
+		final V1PodTemplateSpec template = buildCopySrvPodTemplate(jobName, session);
+		template.getSpec().setRestartPolicy("OnFailure");
+		final V1Container container = template.getSpec().getContainers().get(0);
+		container.addEnvItem(new V1EnvVar().name("COPYSRV_SHARD_URL").value(StoreConstants.COPYSRV_CALLBACK_URL
+				+ StoreConstants.COPYSRV_SHARDS_PATH + "/" + session + "/" + index));
+		container.addEnvItem(new V1EnvVar().name("COPYSRV_CALLBACK_TOKEN").value(callbackToken));
+		return template;
 	}
 
 	private Object getKill(Request request, Response response) {
-		String output="";
-		try {
-			String session = request.params(StoreConstants.SESSION_ID);
-			if (null == podCopySrvTaks.get(session)) {
-				response.status(404);
-				output= "Session does not exist.";
-			}
-			output=killCopySrvDeployment(options.getCopySrvDeploymentName() + session);
+		String session = request.params(StoreConstants.SESSION_ID);
+		final CacheElement<E> cacheElement = cacheMap.get(session);
+		if (cacheElement == null) {
+			response.status(404);
+			return "Session does not exist.";
+		}
+		final SessionState previous = cacheElement.getTask().advance(SessionState.KILLED);
+		if (previous == null || !previous.isStarted()) {
+			// Finished, killed before or never started, nothing to stop
+			return "service beendet";
+		}
+		if (admissionController.dequeue(session)) {
+			// not started yet or preempted, only leave the queue
+			pendingWork.remove(session);
+			finishedProgress.remove(session);
+			downloadCache.finish(session);
 			podCopySrvTaks.remove(session);
-		} catch (ApiException e) {
-			response.status(409); // Error
-			LOGGER.error(e.getResponseBody(), e);
-			e.printStackTrace();
+			if (!useFleet()) {
+				copyBackend().cancel(session);
+			}
+			return "service beendet";
+		}
+		if (useFleet()) {
+			// Running batches are finished, the fleet itself stays up
+			admissionController.release(session);
+			fleet.cancel(session);
+		} else {
+			// The orchestration releases its admission once its thread is free
+			copyBackend().cancel(session);
 		}
-		return output;
+		podCopySrvTaks.remove(session);
+		finishedProgress.remove(session);
+		return "service beendet";
 	}
 
-	
-	private String killAllCopySrvDeployment() throws ApiException {
-		ExtensionsV1beta1Api extensionV1Api = new ExtensionsV1beta1Api();
-		extensionV1Api.setApiClient(k8sApi.getApiClient());
+	/**
+	 * Marks a copy server deployment as not desired anymore. The deletion is
+	 * performed in the background, ReplicaSets and Pods are removed by Kubernetes.
+	 *
+	 * @param deploymentName the name of the deployment
+	 */
+	private void killCopySrvDeployment(String deploymentName) {
+		copySrvController.remove(deploymentName);
+	}
 
-		V1beta1ReplicaSetList rs = extensionV1Api.listNamespacedReplicaSet(NAMESPACE, true, null, null, null,
-				"copySrv=" + options.getCopySrvDeploymentName(), null, null, null, null);
-		extensionV1Api.deleteCollectionNamespacedDeployment(NAMESPACE, true, null, null, null,"copySrv=" + options.getCopySrvDeploymentName(),
-				null, null, null, null);
-		for (V1beta1ReplicaSet r : rs.getItems()) {
-			com.squareup.okhttp.Response response;
-			try {
-				response = extensionV1Api.deleteNamespacedReplicaSetCall(r.getMetadata().getName(), NAMESPACE, null,
-						new V1DeleteOptions().gracePeriodSeconds(0L).propagationPolicy("Foreground"), null, null, null,
-						null, null, null).execute();
-				if (!response.isSuccessful()) {
-					LOGGER.warn("Couldn't delete rs [{}] with reason: {}", r.getMetadata().getName(),
-							response.message());
-					return "Couldn't delete rs [{}] with reason: {}"+ r.getMetadata().getName()+
-							response.message();
+	/**
+	 * Tells the copy server for each file whether it is linked from the download
+	 * cache, awaited from a concurrent download, downloaded into the cache or
+	 * downloaded directly. Evicted objects are deleted by the copy server.
+	 */
+	private Map<String, Object> buildCacheInstructions(final String session, final List<String> urls) {
+		// url -> validator, size
+		final Map<String, String> validators = new HashMap<>();
+		final Map<String, Long> sizes = new HashMap<>();
+		final CacheElement<E> cacheElement = cacheMap.get(session);
+		if (cacheElement != null) {
+			final StoreTask task = cacheElement.getTask();
+			synchronized (task) {
+				final TaskDocuments documents = task.getDocuments();
+				for (int i = 0; i < documents.size(); i++) {
+					validators.put(documents.getUrl(i), documents.getValidator(i));
+					sizes.put(documents.getUrl(i), documents.getSize(i));
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
 		}
-		return "Alle Services wurden beendet";
-	}
-		
-	
-	/**
-	 * kill the CopySrvDeployment
-	 * 
-	 * @return V1Status
-	 * @throws ApiException
-	 */
-	private String  killCopySrvDeployment(String deploymentName) throws ApiException {
-		ExtensionsV1beta1Api extensionV1Api = new ExtensionsV1beta1Api();
-		extensionV1Api.setApiClient(k8sApi.getApiClient());
-
-		V1beta1ReplicaSetList rs = extensionV1Api.listNamespacedReplicaSet(NAMESPACE, true, null, null, null,
-				"app=" + deploymentName, null, null, null, null);
-		extensionV1Api.deleteCollectionNamespacedDeployment(NAMESPACE, true, null, null, null, "app=" + deploymentName,
-				null, null, null, null);
-		for (V1beta1ReplicaSet r : rs.getItems()) {
-			com.squareup.okhttp.Response response;
-			try {
-				response = extensionV1Api.deleteNamespacedReplicaSetCall(r.getMetadata().getName(), NAMESPACE, null,
-						new V1DeleteOptions().gracePeriodSeconds(0L).propagationPolicy("Foreground"), null, null, null,
-						null, null, null).execute();
-				if (!response.isSuccessful()) {
-					LOGGER.warn("Couldn't delete rs [{}] with reason: {}", r.getMetadata().getName(),
-							response.message());
-					return "Couldn't delete rs [{}] with reason: {}"+ r.getMetadata().getName()+
-							response.message();
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
+		final List<Map<String, String>> objects = new ArrayList<>();
+		for (String url : urls) {
+			final DownloadCache.Mode mode = !sizes.containsKey(url) ? DownloadCache.Mode.BYPASS
+					: downloadCache.lookup(session, url, validators.get(url), sizes.get(url));
+			if (mode != DownloadCache.Mode.BYPASS) {
+				final Map<String, String> object = new HashMap<>();
+				object.put("url", url);
+				object.put("key", DownloadCache.key(url, validators.get(url)));
+				object.put("mode", mode.name());
+				objects.add(object);
 			}
 		}
-		return "service beendnet";
+		final Map<String, Object> cache = new HashMap<>();
+		cache.put("dir", getDownloadCacheDir());
+		cache.put("objects", objects);
+		cache.put("evict", downloadCache.drainEvicted());
+		return cache;
+	}
+
+	private boolean isDownloadCacheEnabled() {
+		return StoreConstants.DOWNLOAD_CACHE_MAX_BYTES > 0
+				&& (!StoreConstants.DOWNLOAD_CACHE_CLAIM.isEmpty() || options.getVolumeMount() != null);
+	}
+
+	private String getDownloadCacheDir() {
+		if (!StoreConstants.DOWNLOAD_CACHE_CLAIM.isEmpty()) {
+			return StoreConstants.DOWNLOAD_CACHE_PATH;
+		}
+		return options.getVolumeMount().getMountPath() + "/" + StoreConstants.DOWNLOAD_CACHE_SUBDIR;
+	}
+
+	private static boolean isCallbackEnabled() {
+		return !StoreConstants.COPYSRV_CALLBACK_URL.isEmpty();
+	}
+
+	private static String newCallbackToken() {
+		final byte[] token = new byte[32];
+		new SecureRandom().nextBytes(token);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
 	}
 
 	private int replicationChooser(int numberOfTaskToCopy) {
@@ -681,7 +2089,102 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 		}
 	}
 
-	private Object getProgress(Request request, Response response) {
+	/**
+	 * Returns a compact status for each of the sessions given as comma separated
+	 * list in the sessionIds query parameter, or for all sessions of the
+	 * authenticated user if the parameter is missing. Only the in-memory state
+	 * is used, so the copy servers are not queried and the response is built in
+	 * a single pass.
+	 */
+	private Object getSessionsProgress(Request request, Response response) throws IOException {
+		final String sessionIds = request.queryParams(StoreConstants.SESSION_IDS_QUERYPARAM);
+		final String user = AuthenticatedUser.getName(request, response);
+		final List<String> sessions = new ArrayList<>();
+		if (sessionIds != null) {
+			for (String session : sessionIds.split(",")) {
+				if (!session.trim().isEmpty()) {
+					sessions.add(session.trim());
+				}
+			}
+			if (sessions.size() > StoreConstants.MAX_BULK_SESSIONS) {
+				response.status(413);
+				return "Too many sessions";
+			}
+		} else if (user != null) {
+			for (Map.Entry<String, CacheElement<E>> entry : cacheMap.entrySet()) {
+				if (user.equals(entry.getValue().getTask().getUserId())) {
+					sessions.add(entry.getKey());
+				}
+			}
+		}
+		try (JsonWriter writer = JsonResponseWriter.open(request, response)) {
+			writer.beginArray();
+			for (String session : sessions) {
+				writeSessionStatus(writer, session, user);
+			}
+			writer.endArray();
+		}
+		return "";
+	}
+
+	private void writeSessionStatus(final JsonWriter writer, final String session, final String user)
+			throws IOException {
+		writer.beginObject();
+		writer.name(StoreConstants.SESSION_ID).value(session);
+		final CacheElement<E> cacheElement = cacheMap.get(session);
+		// Sessions of other users are reported like unknown ones, their existence is not disclosed
+		if (cacheElement == null || user == null || !user.equals(cacheElement.getTask().getUserId())) {
+			writer.name("state").nullValue();
+			writer.endObject();
+			return;
+		}
+		final StoreTask task = cacheElement.getTask();
+		// A file may be reported by several sources, count it once
+		final Set<String> finished = new HashSet<>(copySrvEvents.getFinishedFiles(session));
+		final Set<String> failed = new HashSet<>();
+		for (JsonElement element : finishedProgress.getOrDefault(session, Collections.emptyList())) {
+			if (!element.isJsonObject()) {
+				continue;
+			}
+			final JsonObject file = element.getAsJsonObject();
+			if (file.has("fileName") && file.has("state")) {
+				final String state = file.get("state").getAsString();
+				if (CopyStatus.FINISHED.toString().equals(state)) {
+					finished.add(file.get("fileName").getAsString());
+				} else if (CopyStatus.ERROR.toString().equals(state)) {
+					failed.add(file.get("fileName").getAsString());
+				}
+			}
+		}
+		final int documentCount;
+		synchronized (task) {
+			final TaskDocuments documents = task.getDocuments();
+			documentCount = documents.size();
+			for (int i = 0; i < documentCount; i++) {
+				final CopyStatus status = documents.getStatus(i);
+				if (status == CopyStatus.FINISHED) {
+					finished.add(documents.getName(i));
+				} else if (status == CopyStatus.ERROR) {
+					failed.add(documents.getName(i));
+				}
+			}
+		}
+		failed.removeAll(finished);
+		writer.name("state").value(task.getState().name());
+		final int queuePosition = admissionController.getQueuePosition(session);
+		if (queuePosition > 0) {
+			writer.name("queuePosition").value(queuePosition);
+		}
+		writer.name("files").value(documentCount);
+		writer.name("finished").value(finished.size());
+		writer.name("failed").value(failed.size());
+		if (bandwidthAllocator.isEnabled()) {
+			writer.name("bandwidthInBytesPerSecond").value(bandwidthAllocator.getSessionRate(session));
+		}
+		writer.endObject();
+	}
+
+	private Object getProgress(Request request, Response response) throws IOException {
 		String session = request.params(StoreConstants.SESSION_ID);
 		CacheElement<E> cacheElement = cacheMap.get(session);
 
@@ -690,47 +2193,117 @@ public abstract class AbstractStoreService<E extends ICredentials> {
 			return "Session does not exist.";
 		}
 
+		response.header(StoreConstants.SESSION_STATE_HEADER, cacheElement.getTask().getState().name());
+		final int queuePosition = admissionController.getQueuePosition(session);
+		if (queuePosition > 0) {
+			response.status(202);
+			return String.format(StoreConstants.QUEUED_RESPONSE, queuePosition);
+		}
 		if (podCopySrvTaks.get(session) == null) {
 			response.status(404);
 			return "The progress does not exist!";
 		}
 		String[] podsIP = podCopySrvTaks.get(session);
 		/*
-		 * hier bekomme ich meine Serialisierten RersearchdataInputstream und schreibe
-		 * siehe in mein Gedaechnis podProgressMessage falls ein Pod beendet wurde wird
-		 * kein neuer Progress gespeichert
+		 * Collect the progress of each pod and write it as one list. A pod which is
+		 * not reachable yet contributes no elements, so early requests may return
+		 * partial or empty lists.
 		 */
-		StringBuffer progressList = new StringBuffer();
-		progressList.append("[");
-		try {
-			// aus der Map baue ich dann neue ProgressListen
-			// indem ich die Klammer am Ende entferne und mit , konkatiniere
-
-			for (String pod : podsIP) {
-				int port = StoreConstants.COPYSRV_CONTAINERPORT;
-				HttpURLConnection con;
-				con = (HttpURLConnection) new URL("http", pod, port, "/getProgress").openConnection();
-				con.setRequestMethod("GET");
-				BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				String inputLine;
-				StringBuffer jsonResponse = new StringBuffer();
-				while ((inputLine = in.readLine()) != null) {
-					jsonResponse.append(inputLine);
-				}
-				in.close();
-				con.disconnect();
-				progressList.append(jsonResponse.substring(1, jsonResponse.length() - 1));
-				progressList.append(", ");
-			}
-			progressList.delete((progressList.length() - 2), progressList.length());
-		} catch (IOException e) {
-			e.printStackTrace();
-			//es kann sein das zu Anfang noch nicht alle CopySrv fertig intialsiert sind
-			//und so lange wird die Leere Liste returnt
-			progressList = new StringBuffer();
-			progressList.append("[");
+		final List<List<JsonElement>> progressLists = new ArrayList<>(podsIP.length + 2);
+		progressLists.add(finishedProgress.getOrDefault(session, Collections.emptyList()));
+		progressLists.add(uploadBackend.getRunningProgress(session));
+		for (String pod : podsIP) {
+			try {
+				final List<JsonElement> podProgress = readPodProgress(pod, session);
+				// Files in transfer show the current share of their copy server
+				final long rate = bandwidthAllocator.getRate(pod);
+				if (rate != BandwidthAllocator.UNLIMITED) {
+					for (JsonElement element : podProgress) {
+						if (element.isJsonObject()) {
+							element.getAsJsonObject().addProperty("bandwidthInBytesPerSecond", rate);
+						}
+					}
+				}
+				progressLists.add(podProgress);
+			} catch (IOException | JsonParseException | IllegalStateException e) {
+				LOGGER.debug("Progress of copy server {} not available: {}", pod, e.toString());
+			}
+		}
+		if (bandwidthAllocator.isEnabled()) {
+			response.header("X-Bandwidth-Allocation", Long.toString(bandwidthAllocator.getSessionRate(session)));
+		}
+		final ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.fromName(StoreConstants.CHECKSUM_ALGORITHM);
+		// file name -> digest of the source
+		final Map<String, String> expectedByName = new HashMap<>();
+		if (checksumAlgorithm != null) {
+			synchronized (cacheElement.getTask()) {
+				final TaskDocuments documents = cacheElement.getTask().getDocuments();
+				for (int i = 0; i < documents.size(); i++) {
+					expectedByName.put(documents.getName(i), documents.getDigest(i, checksumAlgorithm));
+				}
+			}
+		}
+		try (JsonWriter writer = JsonResponseWriter.open(request, response)) {
+			writer.beginArray();
+			for (List<JsonElement> progressList : progressLists) {
+				for (JsonElement element : progressList) {
+					if (checksumAlgorithm != null && element.isJsonObject()) {
+						addChecksumStatus(element.getAsJsonObject(), checksumAlgorithm, expectedByName);
+					}
+					JsonResponseWriter.GSON.toJson(element, writer);
+				}
+			}
+			writer.endArray();
+		}
+		return "";
+	}
+
+	/**
+	 * Compares the checksum a copy server reported for a file with the
+	 * checksum of its source.
+	 */
+	private void addChecksumStatus(final JsonObject file, final ChecksumAlgorithm algorithm,
+			final Map<String, String> expectedByName) {
+		if (!file.has("fileName")) {
+			return;
+		}
+		final String expected = expectedByName.get(file.get("fileName").getAsString());
+		final String actual = file.has("checksum") && !file.get("checksum").isJsonNull()
+				? file.get("checksum").getAsString() : null;
+		final ChecksumStatus status = ResearchDataInputStream.checksumStatus(expected, actual, algorithm);
+		file.addProperty("checksumAlgorithm", algorithm.getName());
+		file.addProperty("checksumStatus", status.toString());
+		if (status == ChecksumStatus.MISMATCH) {
+			file.addProperty("state", CopyStatus.ERROR.toString());
+		}
+	}
+
+	/**
+	 * Reads the progress list of a single copy server without buffering the
+	 * response as a string.
+	 *
+	 * @param podIP the address of the copy server
+	 * @param session the session, copy servers of a shared fleet only report its files
+	 * @return the progress elements reported by the copy server
+	 * @throws IOException if the copy server is not reachable
+	 */
+	private List<JsonElement> readPodProgress(String podIP, String session) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL("http", podIP, StoreConstants.COPYSRV_CONTAINERPORT,
+				"/getProgress?" + StoreConstants.SESSION_ID + "=" + session).openConnection();
+		con.setRequestMethod("GET");
+		final JsonParser parser = new JsonParser();
+		final List<JsonElement> elements = new ArrayList<>();
+		try (JsonReader in = new JsonReader(
+				new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+			in.beginArray();
+			while (in.hasNext()) {
+				elements.add(parser.parse(in));
+			}
+			in.endArray();
+		} finally {
+			con.disconnect();
 		}
-		return progressList.append("]");
+		return elements;
 	}
 
 	private Object getLoggedIn(Request request, Response response) {
@@ -30,9 +30,195 @@ public class StoreConstants {
             .getOrDefault("OPENID_JWK_ENDPOINT", "http://keycloak-http.default.svc.cluster.local/admin/auth/realms/master/protocol/openid-connect/certs");
 
     public static final String SESSION_ID = "sessionId";
+    public static final String SESSION_STATE_HEADER = "X-Session-State";
     public static final String DIR_QUERYPARAM = "dir";
+    public static final String LIMIT_QUERYPARAM = "limit";
+    public static final String PAGE_TOKEN_QUERYPARAM = "pageToken";
     public static final String IS_LOGGED_IN_RESPONSE = "{ \"isLoggedIn\" : \"%b\" }";
     public static final String DIR_CREATED_RESPONSE = "{ \"dirCreated\" : \"%b\" }";
     public static final int COPYSRV_CONTAINERPORT = 5679;
-    
+
+    // Unauthenticated probe endpoints
+    public static final String HEALTH_PATH = "/health";
+    public static final String READY_PATH = "/ready";
+    public static final String HEALTH_RESPONSE = "{ \"healthy\" : \"true\" }";
+
+    // Orchestration thread pool, also the number of sessions copied by their own copy servers at once
+    public static final int ORCHESTRATION_THREADS = Integer.parseInt(System.getenv()
+            .getOrDefault("ORCHESTRATION_THREADS", "16"));
+
+    // Limits for incoming store requests
+    public static final long MAX_PAYLOAD_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("MAX_PAYLOAD_BYTES", "16777216"));
+    public static final int MAX_DOCUMENTS = Integer.parseInt(System.getenv()
+            .getOrDefault("MAX_DOCUMENTS", "100000"));
+
+    // Limits for bulk session creation and multi-session progress queries
+    public static final long MAX_BULK_PAYLOAD_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("MAX_BULK_PAYLOAD_BYTES", "67108864"));
+    public static final int MAX_BULK_SESSIONS = Integer.parseInt(System.getenv()
+            .getOrDefault("MAX_BULK_SESSIONS", "1000"));
+    public static final String SESSION_IDS_QUERYPARAM = "sessionIds";
+
+    // Responses larger than this are gzip compressed, if accepted by the client
+    public static final int GZIP_MIN_BYTES = Integer.parseInt(System.getenv()
+            .getOrDefault("GZIP_MIN_BYTES", "8192"));
+
+    // Directory listing cache, a TTL of 0 disables the cache
+    public static final int LISTING_CACHE_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("LISTING_CACHE_SIZE", "1000"));
+    public static final long LISTING_CACHE_TTL_SECONDS = Long.parseLong(System.getenv()
+            .getOrDefault("LISTING_CACHE_TTL_SECONDS", "30"));
+    public static final boolean LISTING_CACHE_COALESCE = Boolean.parseBoolean(System.getenv()
+            .getOrDefault("LISTING_CACHE_COALESCE", "true"));
+
+    // Shared copy server fleet, instead of one deployment per session
+    public static final boolean COPYSRV_SHARED_FLEET = Boolean.parseBoolean(System.getenv()
+            .getOrDefault("COPYSRV_SHARED_FLEET", "false"));
+    public static final int FLEET_MIN_REPLICAS = Integer.parseInt(System.getenv()
+            .getOrDefault("FLEET_MIN_REPLICAS", "1"));
+    public static final int FLEET_MAX_REPLICAS = Integer.parseInt(System.getenv()
+            .getOrDefault("FLEET_MAX_REPLICAS", "16"));
+    public static final int FLEET_BATCH_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("FLEET_BATCH_SIZE", "50"));
+
+    // Admission control for copy jobs
+    public static final double USER_REQUEST_BURST = Double.parseDouble(System.getenv()
+            .getOrDefault("USER_REQUEST_BURST", "10"));
+    public static final double USER_REQUESTS_PER_MINUTE = Double.parseDouble(System.getenv()
+            .getOrDefault("USER_REQUESTS_PER_MINUTE", "30"));
+    public static final int MAX_CONCURRENT_REPLICAS = Integer.parseInt(System.getenv()
+            .getOrDefault("MAX_CONCURRENT_REPLICAS", "64"));
+    public static final long MAX_BYTES_IN_FLIGHT = Long.parseLong(System.getenv()
+            .getOrDefault("MAX_BYTES_IN_FLIGHT", "107374182400"));
+    public static final String QUEUED_RESPONSE = "{ \"queuePosition\" : \"%d\" }";
+
+    // Tasks without a priority are interactive up to this total size, bulk transfers otherwise
+    public static final long INTERACTIVE_MAX_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("INTERACTIVE_MAX_BYTES", "1073741824"));
+    public static final boolean PREEMPTION_ENABLED = Boolean.parseBoolean(System.getenv()
+            .getOrDefault("PREEMPTION_ENABLED", "true"));
+
+    // Completion callbacks of copy servers, an empty URL disables them and the copy servers are polled
+    public static final String COPYSRV_EVENTS_PATH = "/copysrv/events";
+    public static final String COPYSRV_CALLBACK_URL = System.getenv()
+            .getOrDefault("COPYSRV_CALLBACK_URL", "");
+    public static final long COPYSRV_POLL_MILLIS = 2000;
+    public static final long COPYSRV_POLL_FALLBACK_MILLIS = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_POLL_FALLBACK_MILLIS", "30000"));
+
+    // Download cache shared by the copy servers, a size of 0 disables it. Without a claim of its own, the cache is
+    // kept on the volume of the copy servers, so cached objects can be hard linked into the target directories
+    public static final long DOWNLOAD_CACHE_MAX_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("DOWNLOAD_CACHE_MAX_BYTES", "0"));
+    public static final String DOWNLOAD_CACHE_CLAIM = System.getenv()
+            .getOrDefault("DOWNLOAD_CACHE_CLAIM", "");
+    public static final String DOWNLOAD_CACHE_PATH = System.getenv()
+            .getOrDefault("DOWNLOAD_CACHE_PATH", "/download-cache");
+    public static final String DOWNLOAD_CACHE_SUBDIR = ".download-cache";
+
+    // Metadata of research data URLs, resolved with HEAD requests and revalidated after the TTL
+    public static final int URL_METADATA_CACHE_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("URL_METADATA_CACHE_SIZE", "10000"));
+    public static final long URL_METADATA_TTL_SECONDS = Long.parseLong(System.getenv()
+            .getOrDefault("URL_METADATA_TTL_SECONDS", "600"));
+    public static final int URL_METADATA_HOST_CONNECTIONS = Integer.parseInt(System.getenv()
+            .getOrDefault("URL_METADATA_HOST_CONNECTIONS", "4"));
+    public static final int URL_METADATA_THREADS = Integer.parseInt(System.getenv()
+            .getOrDefault("URL_METADATA_THREADS", "32"));
+    public static final int URL_METADATA_TIMEOUT_MILLIS = 10000;
+
+    // Connection limits of the source hosts, halved and backed off whenever a host throttles a copy server
+    public static final int HOST_MAX_CONNECTIONS = Integer.parseInt(System.getenv()
+            .getOrDefault("HOST_MAX_CONNECTIONS", "8"));
+    public static final long HOST_MIN_BACKOFF_MILLIS = 1000;
+    public static final long HOST_MAX_BACKOFF_MILLIS = 300000;
+
+    // Execution backend of the copy servers of a session, "deployment" or "job". Jobs fetch their shards from
+    // this service, so they require COPYSRV_CALLBACK_URL
+    public static final String COPYSRV_BACKEND = System.getenv()
+            .getOrDefault("COPYSRV_BACKEND", "deployment");
+    public static final String COPYSRV_SHARDS_PATH = "/copysrv/shards";
+    public static final int JOB_BACKOFF_LIMIT = Integer.parseInt(System.getenv()
+            .getOrDefault("JOB_BACKOFF_LIMIT", "3"));
+    public static final int JOB_TTL_SECONDS = Integer.parseInt(System.getenv()
+            .getOrDefault("JOB_TTL_SECONDS", "600"));
+
+    // Sizing of the copy server pods, one buffer is held per concurrent download
+    public static final int COPYSRV_STREAMS = Integer.parseInt(System.getenv()
+            .getOrDefault("COPYSRV_STREAMS", "4"));
+    public static final long COPYSRV_STREAM_BUFFER_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_STREAM_BUFFER_BYTES", Long.toString(8L * 1024 * 1024)));
+    public static final long COPYSRV_BASE_MEMORY_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_BASE_MEMORY_BYTES", Long.toString(128L * 1024 * 1024)));
+    public static final long COPYSRV_CPU_MILLIS_PER_STREAM = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_CPU_MILLIS_PER_STREAM", "100"));
+    public static final int COPYSRV_LIMIT_FACTOR = Integer.parseInt(System.getenv()
+            .getOrDefault("COPYSRV_LIMIT_FACTOR", "2"));
+
+    // Placement of the copy server pods, the node selector is given as "key=value,key=value"
+    public static final String COPYSRV_NODE_SELECTOR = System.getenv()
+            .getOrDefault("COPYSRV_NODE_SELECTOR", "");
+    public static final boolean COPYSRV_VOLUME_AFFINITY = Boolean.parseBoolean(System.getenv()
+            .getOrDefault("COPYSRV_VOLUME_AFFINITY", "true"));
+
+    // Files of known size up to SMALL_FILE_MAX_BYTES are bundled per host, so a copy server fetches them over one
+    // connection, 0 disables bundling. SMALL_FILE_ARCHIVE writes each bundle as one tar archive into the target
+    public static final long SMALL_FILE_MAX_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("SMALL_FILE_MAX_BYTES", Long.toString(1024L * 1024)));
+    public static final int SMALL_FILE_BATCH_FILES = Integer.parseInt(System.getenv()
+            .getOrDefault("SMALL_FILE_BATCH_FILES", "256"));
+    public static final long SMALL_FILE_BATCH_BYTES = Long.parseLong(System.getenv()
+            .getOrDefault("SMALL_FILE_BATCH_BYTES", Long.toString(64L * 1024 * 1024)));
+    public static final boolean SMALL_FILE_ARCHIVE = Boolean.parseBoolean(System.getenv()
+            .getOrDefault("SMALL_FILE_ARCHIVE", "false"));
+
+    // Tuning of the parallel transfers of each copy server, between 1 and COPYSRV_STREAMS. A tuning interval of 0
+    // leaves the concurrency to the copy servers
+    public static final long COPYSRV_TUNE_MILLIS = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_TUNE_MILLIS", "5000"));
+    public static final double COPYSRV_TUNE_DECREASE = Double.parseDouble(System.getenv()
+            .getOrDefault("COPYSRV_TUNE_DECREASE", "0.5"));
+    public static final double COPYSRV_TUNE_DROP_TOLERANCE = Double.parseDouble(System.getenv()
+            .getOrDefault("COPYSRV_TUNE_DROP_TOLERANCE", "0.2"));
+
+    // Bandwidth of the copy servers in bytes per second, globally, per user and per session, 0 for no limit. Copy
+    // servers may burst for BANDWIDTH_BURST_SECONDS of their rate
+    public static final long BANDWIDTH_GLOBAL_BYTES_PER_SECOND = Long.parseLong(System.getenv()
+            .getOrDefault("BANDWIDTH_GLOBAL_BYTES_PER_SECOND", "0"));
+    public static final long BANDWIDTH_USER_BYTES_PER_SECOND = Long.parseLong(System.getenv()
+            .getOrDefault("BANDWIDTH_USER_BYTES_PER_SECOND", "0"));
+    public static final long BANDWIDTH_SESSION_BYTES_PER_SECOND = Long.parseLong(System.getenv()
+            .getOrDefault("BANDWIDTH_SESSION_BYTES_PER_SECOND", "0"));
+    public static final long BANDWIDTH_BURST_SECONDS = Long.parseLong(System.getenv()
+            .getOrDefault("BANDWIDTH_BURST_SECONDS", "1"));
+
+    // Checksum computed while copying, "md5", "sha-256" or "crc32c", empty to disable. Checksums are compared with
+    // the digests the sources provide
+    public static final String CHECKSUM_ALGORITHM = System.getenv()
+            .getOrDefault("CHECKSUM_ALGORITHM", "");
+
+    // Multipart uploads of stores backed by object stores, the part size is raised to the limits of the store
+    public static final int MULTIPART_PART_BYTES = Integer.parseInt(System.getenv()
+            .getOrDefault("MULTIPART_PART_BYTES", Integer.toString(8 * 1024 * 1024)));
+    public static final int MULTIPART_BUFFERS = Integer.parseInt(System.getenv()
+            .getOrDefault("MULTIPART_BUFFERS", "4"));
+    public static final int MULTIPART_THREADS = Integer.parseInt(System.getenv()
+            .getOrDefault("MULTIPART_THREADS", "16"));
+    public static final int MULTIPART_RETRIES = Integer.parseInt(System.getenv()
+            .getOrDefault("MULTIPART_RETRIES", "3"));
+    public static final long MULTIPART_RETRY_MILLIS = 1000;
+
+    // Retry backoff for the garbage collection of copy server resources
+    public static final long GC_MIN_BACKOFF_MILLIS = 500;
+    public static final long GC_MAX_BACKOFF_MILLIS = 60000;
+
+    // Copy server deployments carry the owning instance, only its own leftovers are deleted by an instance. Should be
+    // stable across restarts, e.g. the name of a StatefulSet pod
+    public static final String COPYSRV_OWNER = System.getenv()
+            .getOrDefault("COPYSRV_OWNER", System.getenv().getOrDefault("HOSTNAME", "store-service"));
+    // Sessions fail if none of their copy servers is ready within this time
+    public static final long COPYSRV_STARTUP_TIMEOUT_SECONDS = Long.parseLong(System.getenv()
+            .getOrDefault("COPYSRV_STARTUP_TIMEOUT_SECONDS", "300"));
+
 }
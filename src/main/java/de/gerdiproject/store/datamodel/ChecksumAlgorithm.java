@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import de.gerdiproject.store.util.Crc32cDigest;
+
+/**
+ * This depicts the checksum algorithms which can be computed while copying. The names follow the digest algorithms
+ * of HTTP, in lower case.
+ */
+public enum ChecksumAlgorithm {
+    MD5("md5"), SHA_256("sha-256"), CRC32C("crc32c");
+
+    private final String name;
+
+    ChecksumAlgorithm(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the algorithm, as used in digest headers and copy requests.
+     * @return The name in lower case
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a new digest of this algorithm.
+     * @return The digest
+     */
+    public MessageDigest newDigest() {
+        if (this == CRC32C) {
+            return new Crc32cDigest();
+        }
+        try {
+            return MessageDigest.getInstance(name.toUpperCase(Locale.ROOT));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform provides MD5 and SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the algorithm of a name, ignoring case and dashes.
+     * @param name The name, e.g. "SHA-256" or "sha256"
+     * @return The algorithm, null if it is not supported
+     */
+    public static ChecksumAlgorithm fromName(final String name) {
+        if (name == null) {
+            return null;
+        }
+        final String normalized = name.trim().replace("-", "").toLowerCase(Locale.ROOT);
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.name.replace("-", "").equals(normalized)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
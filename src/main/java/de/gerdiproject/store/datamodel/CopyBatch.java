@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * This class represents a batch of files of one session, which is sent to a single copy server. The session and the
+ * user are part of the batch, so copy servers may work on batches of different sessions.
+ *
+ * @param <E> The type of the class which implements the {@linkplain ICredentials} interface and is used as credentials storage.
+ */
+public @Data
+class CopyBatch<E extends ICredentials> {
+
+    private final String sessionId;
+    private final String userId;
+    private final E credentials;
+    private final String targetDir;
+    private final List<String> urls;
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * This interface represents a cursor over the elements of a directory. Elements are fetched lazily, so large
+ * directories can be streamed to the client while they are being listed.
+ */
+public interface IListCursor extends Iterator<ListElement>, Closeable {
+
+    /**
+     * Returns a token which allows to resume the listing after the last element returned by {@link #next()}.
+     *
+     * @return The token, or null if there are no further elements
+     */
+    String getNextPageToken();
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface represents the primitive upload calls of an object store, such as multipart uploads of S3 or
+ * segmented uploads of Swift. The library sizes the parts, uploads them in parallel, retries failed parts and commits
+ * the upload.
+ *
+ * @param <E> The type of the class which implements the {@linkplain ICredentials} interface and is used as credentials storage.
+ */
+public interface IMultipartUpload<E extends ICredentials> {
+
+    /**
+     * Starts an upload.
+     *
+     * @param creds      The stored credentials of the user
+     * @param targetPath The path of the object to be written
+     * @return An identifier of the upload, passed to the other calls
+     * @throws IOException If the upload could not be started
+     */
+    String initiate(E creds, String targetPath) throws IOException;
+
+    /**
+     * Uploads one part. Parts may be uploaded concurrently and more than once, if an attempt failed.
+     *
+     * @param creds      The stored credentials of the user
+     * @param uploadId   The identifier returned by {@link #initiate(ICredentials, String)}
+     * @param partNumber The number of the part, starting at 1
+     * @param data       The buffer holding the part, it is reused once this call returned
+     * @param length     The number of bytes of the part in the buffer
+     * @return A tag of the uploaded part, e.g. its ETag, passed to {@link #complete(ICredentials, String, List)}
+     * @throws IOException If the part could not be uploaded
+     */
+    String uploadPart(E creds, String uploadId, int partNumber, byte[] data, int length) throws IOException;
+
+    /**
+     * Commits an upload, the object becomes visible.
+     *
+     * @param creds    The stored credentials of the user
+     * @param uploadId The identifier of the upload
+     * @param partTags The tags of all parts, ordered by part number
+     * @throws IOException If the upload could not be committed
+     */
+    void complete(E creds, String uploadId, List<String> partTags) throws IOException;
+
+    /**
+     * Discards a failed upload and its parts, which object stores keep and bill until the upload is aborted.
+     *
+     * @param creds    The stored credentials of the user
+     * @param uploadId The identifier of the upload
+     * @throws IOException If the upload could not be discarded
+     */
+    void abort(E creds, String uploadId) throws IOException;
+
+    /**
+     * Returns the minimum size of all parts but the last one.
+     *
+     * @return The size in bytes, 5 MiB by default as required by S3
+     */
+    default int getMinPartSize() {
+        return 5 * 1024 * 1024;
+    }
+
+    /**
+     * Returns the maximum number of parts of an upload.
+     *
+     * @return The number of parts, 10000 by default as allowed by S3
+     */
+    default int getMaxParts() {
+        return 10000;
+    }
+}
@@ -18,6 +18,11 @@ package de.gerdiproject.store.datamodel;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import de.gerdiproject.store.StoreConstants;
+import de.gerdiproject.store.util.UrlMetadataResolver;
 
 /**
  * This class implements an {@linkplain InputStream} for research data and adds library specific logic.
@@ -27,11 +32,15 @@ import java.net.URL;
 public class ResearchDataInputStream extends InputStream {
 
     private final long size;
-    private final InputStream inputStream;
+    private InputStream inputStream;
     private final String name;
+    private final UrlMetadata metadata;
     private long copiedSize = 0;
     private CopyStatus status = CopyStatus.PENDING;
     private URL url;
+    private ChecksumAlgorithm checksumAlgorithm;
+    private MessageDigest digest;
+    private String checksum;
 
     @Deprecated
     public ResearchDataInputStream(final URL url, final StoreTask storeTask) throws IOException { // NOPMD ignore unused parameter, method is deprecated anyway
@@ -39,30 +48,172 @@ public class ResearchDataInputStream extends InputStream {
     }
 
     public ResearchDataInputStream(final URL url) throws IOException {
+        this(url, UrlMetadataResolver.getDefault().resolve(url));
+    }
+
+    /**
+     * Constructor for already resolved URLs. The stream itself is opened on the first read.
+     *
+     * @param url      The URL of the research data
+     * @param metadata The metadata of the URL
+     */
+    public ResearchDataInputStream(final URL url, final UrlMetadata metadata) {
         super();
         this.url=url;
         this.name = url.getFile();
-        this.inputStream = url.openStream();
-        this.size = url.openConnection().getContentLengthLong();
+        this.metadata = metadata;
+        this.size = metadata.getSize();
         if (this.size == -1) {
             this.status = CopyStatus.UNKNOWN_SIZE;
         }
+        final ChecksumAlgorithm configured = ChecksumAlgorithm.fromName(StoreConstants.CHECKSUM_ALGORITHM);
+        if (configured != null) {
+            enableChecksum(configured);
+        }
     }
 
     @Override
     public int read() throws IOException {
+        final int value = getInputStream().read();
+        if (value < 0) {
+            finishChecksum();
+            return value;
+        }
         this.copiedSize++;
-        return inputStream.read();
+        if (digest != null) {
+            digest.update((byte) value);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int read = getInputStream().read(buffer, offset, length);
+        if (read < 0) {
+            finishChecksum();
+            return read;
+        }
+        this.copiedSize += read;
+        if (digest != null) {
+            // The digest is fed from the caller's buffer, the bytes are not copied
+            digest.update(buffer, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Computes a checksum of the bytes while they are read. Must be called before the first read.
+     * @param algorithm The checksum algorithm
+     */
+    public void enableChecksum(final ChecksumAlgorithm algorithm) {
+        if (copiedSize > 0) {
+            throw new IllegalStateException("The checksum must be enabled before the first read.");
+        }
+        this.checksumAlgorithm = algorithm;
+        this.digest = algorithm.newDigest();
+    }
+
+    /**
+     * Returns the checksum algorithm of this stream.
+     * @return The algorithm, null if no checksum is computed
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return this.checksumAlgorithm;
+    }
+
+    /**
+     * Returns the checksum of the read bytes.
+     * @return The checksum in Base64, null until the stream was read completely
+     */
+    public String getChecksum() {
+        return this.checksum;
+    }
+
+    /**
+     * Returns the checksum provided by the source for the algorithm of this stream.
+     * @return The checksum in Base64, null if the source provides none
+     */
+    public String getExpectedChecksum() {
+        return checksumAlgorithm == null ? null : metadata.getDigest(checksumAlgorithm);
+    }
+
+    /**
+     * Returns the integrity state of this stream, compared with the checksum of the source if available.
+     * @return The state, null if no checksum is computed
+     */
+    public ChecksumStatus getChecksumStatus() {
+        return checksumStatus(getExpectedChecksum(), checksum, checksumAlgorithm);
+    }
+
+    /**
+     * Compares a computed checksum with the checksum of the source.
+     * @param expected The checksum of the source in Base64, null if unknown
+     * @param actual The computed checksum in Base64 or hex, null if not computed yet
+     * @param algorithm The algorithm of both checksums, null if no checksum is computed
+     * @return The state, null if no checksum is computed
+     */
+    public static ChecksumStatus checksumStatus(final String expected, final String actual,
+            final ChecksumAlgorithm algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        if (actual == null) {
+            return ChecksumStatus.PENDING;
+        }
+        if (expected == null) {
+            return ChecksumStatus.COMPUTED;
+        }
+        // Sources and copy servers may use hex instead of Base64
+        return toBase64(expected).equals(toBase64(actual)) ? ChecksumStatus.VERIFIED : ChecksumStatus.MISMATCH;
+    }
+
+    private static String toBase64(final String hex) {
+        if (!hex.matches("([0-9a-fA-F]{2})+")) {
+            return hex;
+        }
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private void finishChecksum() {
+        if (digest != null && checksum == null) {
+            this.checksum = Base64.getEncoder().encodeToString(digest.digest());
+            if (getChecksumStatus() == ChecksumStatus.MISMATCH) {
+                setStatus(CopyStatus.ERROR);
+            }
+        }
     }
     
     
     /**
-     * Returns the inputStream
+     * Returns the inputStream, opens it on the first call
      * @return The inputStream
+     * @throws IOException If the stream could not be opened
      */
-    public InputStream getInputStream() {
+    public synchronized InputStream getInputStream() throws IOException {
+    	if (inputStream == null) {
+    		inputStream = url.openStream();
+    	}
     	return inputStream;
     }
+
+    /**
+     * Returns the metadata of the URL, e.g. content type and range support
+     * @return The metadata
+     */
+    public UrlMetadata getMetadata() {
+        return this.metadata;
+    }
     /**
      * Returns the URL
      * @return The URL
@@ -71,6 +222,30 @@ public class ResearchDataInputStream extends InputStream {
     	return url;
     }
 
+    /**
+     * Returns the size of the file.
+     * @return The size in bytes, -1 if unknown
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the ETag or Last-Modified value of the source, identifying the current version of the file.
+     * @return The validator, null if the source provides none
+     */
+    public String getValidator() {
+        return this.metadata.getValidator();
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     * @return The number of bytes
+     */
+    public long getCopiedSize() {
+        return this.copiedSize;
+    }
+
     /**
      * Returns the name of the file.
      * @return The file name
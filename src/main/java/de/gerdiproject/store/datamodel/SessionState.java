@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+/**
+ * This depicts the life cycle of a session. Sessions only move along the allowed transitions, which are performed
+ * atomically by {@link StoreTask#transition(SessionState, SessionState)}.
+ */
+public enum SessionState {
+    CREATED, RESOLVING, READY, PROVISIONING, COPYING, DRAINING, DONE, FAILED, KILLED;
+
+    /**
+     * Returns whether a session in this state may move to another state.
+     *
+     * @param next The next state
+     * @return true if the transition is allowed
+     */
+    public boolean canTransitionTo(final SessionState next) {
+        if (isTerminal() || next == this) {
+            return false;
+        }
+        switch (next) {
+            case RESOLVING:
+                return this == CREATED;
+            case READY:
+                return this == RESOLVING;
+            case PROVISIONING:
+                // Preempted sessions are provisioned again
+                return this == READY || this == COPYING;
+            case COPYING:
+                return this == PROVISIONING;
+            case DRAINING:
+                return this == PROVISIONING || this == COPYING;
+            case DONE:
+                return this == DRAINING;
+            case FAILED:
+                return this != CREATED;
+            case KILLED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether sessions in this state are finished.
+     *
+     * @return true for done, failed and killed sessions
+     */
+    public boolean isTerminal() {
+        return this == DONE || this == FAILED || this == KILLED;
+    }
+
+    /**
+     * Returns whether the copy of sessions in this state was requested.
+     *
+     * @return true from provisioning on
+     */
+    public boolean isStarted() {
+        return compareTo(PROVISIONING) >= 0;
+    }
+}
@@ -18,7 +18,9 @@ package de.gerdiproject.store.datamodel;
 import lombok.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class represents a store task as requested by a user.
@@ -30,16 +32,99 @@ class StoreTask {
 
     private String bookmarkId;
     private String bookmarkName;
-    private List<ResearchDataInputStream> elements = new ArrayList<>();
+    private final TaskDocuments documents = new TaskDocuments();
     private String userId;
-    private boolean started = false;
+    private Priority priority;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicReference<SessionState> state = new AtomicReference<>(SessionState.CREATED);
 
     /**
-     * Adds a {@linkplain ResearchDataInputStream} to the list of data to be stored.
+     * Returns the current state of the session of this task.
+     *
+     * @return The state
+     */
+    public SessionState getState() {
+        return state.get();
+    }
+
+    /**
+     * Moves the session from an expected state to the next one, if the transition is allowed. Only one of concurrent
+     * callers expecting the same state succeeds.
+     *
+     * @param expected The expected current state
+     * @param next     The next state
+     * @return true if the session moved, false if it was in another state or the transition is not allowed
+     */
+    public boolean transition(final SessionState expected, final SessionState next) {
+        return expected.canTransitionTo(next) && state.compareAndSet(expected, next);
+    }
+
+    /**
+     * Moves the session to the next state from whatever state it is in, if the transition is allowed.
+     *
+     * @param next The next state
+     * @return The state the session moved from, null if it did not move
+     */
+    public SessionState advance(final SessionState next) {
+        while (true) {
+            final SessionState current = state.get();
+            if (!current.canTransitionTo(next)) {
+                return null;
+            }
+            if (state.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the copy of this task was requested.
+     *
+     * @return true if the session is provisioning, copying or finished
+     */
+    public boolean isStarted() {
+        return state.get().isStarted();
+    }
+
+    /**
+     * Marks the copy of this task as requested.
+     *
+     * @param started true to request the copy
+     * @deprecated not atomic, use {@link #transition(SessionState, SessionState)}
+     */
+    @Deprecated
+    public void setStarted(final boolean started) {
+        if (started) {
+            transition(SessionState.READY, SessionState.PROVISIONING);
+        }
+    }
+
+    /**
+     * Adds a {@linkplain ResearchDataInputStream} to the list of data to be stored. Only its URL and metadata are
+     * kept.
      *
      * @param inputStream The instance which will be added to the list
      */
     public void addResearchDataInputStream(final ResearchDataInputStream inputStream) {
-        this.elements.add(inputStream);
+        this.documents.add(inputStream.getUrl(), inputStream.getMetadata());
+    }
+
+    /**
+     * Returns the data to be stored as streams. The streams are created on each call, use {@link #getDocuments()}
+     * to read the documents without creating streams. The list can not be modified, documents are added by
+     * {@link #addResearchDataInputStream(ResearchDataInputStream)}. Changes of the state of the streams are not
+     * stored, unless they are passed to {@link TaskDocuments#update(int, ResearchDataInputStream)}.
+     *
+     * @return New streams of all documents
+     * @deprecated documents are stored compactly, use {@link #getDocuments()}
+     */
+    @Deprecated
+    public List<ResearchDataInputStream> getElements() {
+        final List<ResearchDataInputStream> elements = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            elements.add(documents.open(i));
+        }
+        return Collections.unmodifiableList(elements);
     }
 }
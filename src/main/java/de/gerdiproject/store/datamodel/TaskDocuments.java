@@ -0,0 +1,241 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class represents the documents of a {@linkplain StoreTask} in a compact form. Each document is a row of parallel
+ * primitive arrays, URLs are split into an interned prefix, shared by the documents of a directory, and their file
+ * name. {@linkplain ResearchDataInputStream} instances are only created for documents copied in-process. Instances are
+ * not thread-safe, callers synchronize on the task.
+ */
+public class TaskDocuments {
+
+    private static final CopyStatus[] STATES = CopyStatus.values();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int count = 0;
+    private String[] prefixes = new String[INITIAL_CAPACITY];
+    private String[] suffixes = new String[INITIAL_CAPACITY];
+    private String[] validators = new String[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private long[] copied = new long[INITIAL_CAPACITY];
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    // Only few sources provide digests
+    private final Map<Integer, Map<String, String>> digests = new HashMap<>();
+    // URL -> index, built on the first lookup since only in-process uploads look documents up
+    private Map<String, Integer> indexByUrl;
+
+    /**
+     * Adds a document.
+     *
+     * @param url      The URL of the document
+     * @param metadata The resolved metadata of the URL
+     */
+    public void add(final URL url, final UrlMetadata metadata) {
+        if (count == sizes.length) {
+            final int capacity = count * 2;
+            prefixes = Arrays.copyOf(prefixes, capacity);
+            suffixes = Arrays.copyOf(suffixes, capacity);
+            validators = Arrays.copyOf(validators, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            copied = Arrays.copyOf(copied, capacity);
+            states = Arrays.copyOf(states, capacity);
+        }
+        final String value = url.toString();
+        final int split = value.lastIndexOf('/', value.indexOf('?') < 0 ? value.length() : value.indexOf('?')) + 1;
+        prefixes[count] = value.substring(0, split).intern();
+        suffixes[count] = value.substring(split);
+        validators[count] = metadata.getValidator();
+        sizes[count] = metadata.getSize();
+        states[count] = (byte) (metadata.getSize() == -1 ? CopyStatus.UNKNOWN_SIZE : CopyStatus.PENDING).ordinal();
+        if (metadata.getDigests() != null && !metadata.getDigests().isEmpty()) {
+            digests.put(count, metadata.getDigests());
+        }
+        if (indexByUrl != null) {
+            indexByUrl.putIfAbsent(value, count);
+        }
+        count++;
+    }
+
+    /**
+     * Returns the number of documents.
+     *
+     * @return The number of documents
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns whether there are no documents.
+     *
+     * @return true if there are no documents
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the URL of a document.
+     *
+     * @param index The index of the document
+     * @return The URL
+     */
+    public String getUrl(final int index) {
+        check(index);
+        return prefixes[index].concat(suffixes[index]);
+    }
+
+    /**
+     * Returns the name of a document, the file part of its URL.
+     *
+     * @param index The index of the document
+     * @return The name
+     */
+    public String getName(final int index) {
+        try {
+            return new URL(getUrl(index)).getFile();
+        } catch (MalformedURLException e) {
+            // Only valid URLs are added
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the size of a document.
+     *
+     * @param index The index of the document
+     * @return The size in bytes, -1 if unknown
+     */
+    public long getSize(final int index) {
+        check(index);
+        return sizes[index];
+    }
+
+    /**
+     * Returns the ETag or Last-Modified value of the source of a document.
+     *
+     * @param index The index of the document
+     * @return The validator, null if the source provides none
+     */
+    public String getValidator(final int index) {
+        check(index);
+        return validators[index];
+    }
+
+    /**
+     * Returns the digest the source provided for a document.
+     *
+     * @param index     The index of the document
+     * @param algorithm The algorithm
+     * @return The digest in Base64, null if the source provides none
+     */
+    public String getDigest(final int index, final ChecksumAlgorithm algorithm) {
+        check(index);
+        final Map<String, String> known = digests.get(index);
+        return known == null ? null : known.get(algorithm.getName());
+    }
+
+    /**
+     * Returns the copy state of a document.
+     *
+     * @param index The index of the document
+     * @return The state
+     */
+    public CopyStatus getStatus(final int index) {
+        check(index);
+        return STATES[states[index]];
+    }
+
+    /**
+     * Returns the progress of a document, as reported by {@link ResearchDataInputStream#getProgressInPercent()}.
+     *
+     * @param index The index of the document
+     * @return The progress in percent
+     */
+    public int getProgressInPercent(final int index) {
+        switch (getStatus(index)) {
+            case ERROR:
+            case UNKNOWN_SIZE:
+                return 0;
+            case FINISHED:
+                return 100;
+            default:
+                return sizes[index] > 0 ? (int) (copied[index] * 100 / sizes[index]) : 0;
+        }
+    }
+
+    /**
+     * Returns the index of a document.
+     *
+     * @param url The URL of the document
+     * @return The index of the first document with this URL, -1 if there is none
+     */
+    public int indexOf(final String url) {
+        if (indexByUrl == null) {
+            indexByUrl = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                indexByUrl.putIfAbsent(getUrl(i), i);
+            }
+        }
+        final Integer index = indexByUrl.get(url);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Creates a stream of a document, to be copied in-process.
+     *
+     * @param index The index of the document
+     * @return A new stream, opened on the first read
+     */
+    public ResearchDataInputStream open(final int index) {
+        check(index);
+        final String validator = validators[index];
+        // Strong ETags are quoted, other validators are Last-Modified dates
+        final boolean etag = validator != null && validator.startsWith("\"");
+        final UrlMetadata metadata = new UrlMetadata(sizes[index], null, etag ? validator : null,
+                etag ? null : validator, false, System.currentTimeMillis(), digests.get(index));
+        try {
+            return new ResearchDataInputStream(new URL(getUrl(index)), metadata);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stores the state of a stream created by {@link #open(int)}, so the stream can be released.
+     *
+     * @param index  The index of the document
+     * @param stream The stream of the document
+     */
+    public void update(final int index, final ResearchDataInputStream stream) {
+        check(index);
+        copied[index] = stream.getCopiedSize();
+        states[index] = (byte) stream.getStatus().ordinal();
+    }
+
+    private void check(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * This class represents the metadata of a research data URL as reported by its server.
+ */
+public @Data
+class UrlMetadata {
+
+    private final long size;
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private final boolean rangeSupported;
+    private final long fetchedAt;
+    private final Map<String, String> digests;
+
+    /**
+     * Returns the value identifying the current version of the file, a strong ETag or the Last-Modified value.
+     *
+     * @return The validator, null if the server provides none
+     */
+    public String getValidator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Returns the digest of the file the server provided for an algorithm.
+     *
+     * @param algorithm The algorithm
+     * @return The digest in Base64, null if the server provides none
+     */
+    public String getDigest(final ChecksumAlgorithm algorithm) {
+        return digests == null ? null : digests.get(algorithm.getName());
+    }
+
+    /**
+     * Returns a copy of this instance, revalidated at the given time.
+     *
+     * @param time The time of the revalidation in milliseconds
+     * @return The revalidated copy
+     */
+    public UrlMetadata revalidatedAt(final long time) {
+        return new UrlMetadata(size, contentType, etag, lastModified, rangeSupported, time, digests);
+    }
+}
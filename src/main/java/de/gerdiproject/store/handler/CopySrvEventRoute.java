@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.handler;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import de.gerdiproject.store.k8s.CopySrvEvents;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * This class represents a handler for the callbacks of copy servers. Copy servers are not authenticated as users,
+ * they authenticate with the shared callback token they received together with their batch.
+ */
+public class CopySrvEventRoute implements Route {
+
+    public static final String TOKEN_HEADER = "X-Callback-Token";
+
+    private final CopySrvEvents events;
+    private final byte[] token;
+
+    /**
+     * Constructor for this class
+     *
+     * @param events The event registry to which the callbacks are reported
+     * @param token  The token copy servers must send
+     */
+    public CopySrvEventRoute(final CopySrvEvents events, final String token) {
+        this.events = events;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object handle(final Request request, final Response response) {
+        if (!isAuthorized(request, token)) {
+            response.status(403);
+            return "Invalid callback token";
+        }
+        final CopySrvEvents.Type type;
+        final String sessionId;
+        final String podIP;
+        final String fileName;
+        final String url;
+        final long retryAfterMillis;
+        final long batchId;
+        try {
+            final JsonObject body = new JsonParser().parse(request.body()).getAsJsonObject();
+            final String event = getString(body, "event");
+            if (event == null) {
+                throw new JsonParseException("event must not be null.");
+            }
+            type = CopySrvEvents.Type.valueOf(event);
+            sessionId = getString(body, "sessionId");
+            podIP = body.has("podIP") ? getString(body, "podIP") : request.ip();
+            fileName = getString(body, "fileName");
+            url = getString(body, "url");
+            retryAfterMillis = body.has("retryAfterSeconds") ? body.get("retryAfterSeconds").getAsLong() * 1000 : 0;
+            batchId = body.has("batchId") ? body.get("batchId").getAsLong() : 0;
+            if (podIP == null) {
+                throw new JsonParseException("podIP must not be null.");
+            }
+            if (type == CopySrvEvents.Type.FILE_FINISHED && (sessionId == null || fileName == null)) {
+                throw new JsonParseException("sessionId and fileName must not be null.");
+            }
+            if (type == CopySrvEvents.Type.BATCH_FINISHED && batchId <= 0) {
+                throw new JsonParseException("batchId must be given.");
+            }
+            if (type == CopySrvEvents.Type.THROTTLED && url == null) {
+                throw new JsonParseException("url must not be null.");
+            }
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException
+                | IllegalArgumentException e) {
+            response.status(400);
+            return "Invalid event";
+        }
+        if (type == CopySrvEvents.Type.THROTTLED) {
+            events.reportThrottled(url, retryAfterMillis);
+        } else {
+            events.report(sessionId, podIP, type, fileName, batchId);
+        }
+        response.status(204);
+        return "";
+    }
+
+    /**
+     * Checks the callback token of a request from a copy server.
+     *
+     * @param request The request of the copy server
+     * @param token   The expected token
+     * @return true if the request carries the expected token
+     */
+    static boolean isAuthorized(final Request request, final byte[] token) {
+        final String sent = request.headers(TOKEN_HEADER);
+        return sent != null && MessageDigest.isEqual(token, sent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getString(final JsonObject object, final String name) {
+        final JsonElement element = object.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+}
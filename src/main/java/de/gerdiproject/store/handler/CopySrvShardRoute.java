@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.handler;
+
+import de.gerdiproject.store.StoreConstants;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class represents a handler which serves the shards of copy jobs. The pods of a job fetch their copy request
+ * here on startup, they authenticate with the shared callback token.
+ */
+public class CopySrvShardRoute implements Route {
+
+    /**
+     * This interface represents the lookup of the copy request of a shard.
+     */
+    public interface ShardSource {
+
+        /**
+         * Returns the copy request of a shard.
+         *
+         * @param sessionId The session of the shard
+         * @param index     The index of the shard
+         * @return the body of the copy request, null if the shard does not exist
+         */
+        String getPayload(String sessionId, int index);
+    }
+
+    private final ShardSource source;
+    private final byte[] token;
+
+    /**
+     * Constructor for this class
+     *
+     * @param source The lookup of the shards
+     * @param token  The token copy servers must send
+     */
+    public CopySrvShardRoute(final ShardSource source, final String token) {
+        this.source = source;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object handle(final Request request, final Response response) {
+        if (!CopySrvEventRoute.isAuthorized(request, token)) {
+            response.status(403);
+            return "Invalid callback token";
+        }
+        final int index;
+        try {
+            index = Integer.parseInt(request.params("index"));
+        } catch (NumberFormatException e) {
+            response.status(400);
+            return "Invalid shard index";
+        }
+        final String payload = source.getPayload(request.params(StoreConstants.SESSION_ID), index);
+        if (payload == null) {
+            response.status(404);
+            return "Shard not found";
+        }
+        response.type("application/json");
+        return payload;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.handler;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import de.gerdiproject.store.StoreConstants;
+import de.gerdiproject.store.datamodel.CacheElement;
+import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.datamodel.StoreTask;
+import de.gerdiproject.store.pac4j.AuthenticatedUser;
+import de.gerdiproject.store.util.AdmissionController;
+import de.gerdiproject.store.util.BoundedInputStream;
+import de.gerdiproject.store.util.JsonResponseWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * This class represents a handler for a post request which creates several
+ * sessions at once. The payload is a JSON array of store requests, the response
+ * lists the session IDs in the order of the array. Either all sessions are
+ * created or none.
+ *
+ * @param <E> The type used to store the credentials. Must implement the ICredentials interface.
+ */
+public class PostBulkRoute<E extends ICredentials> implements Route {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostBulkRoute.class);
+
+    private final Map<String, CacheElement<E>> cacheMap;
+    private final AdmissionController admissionController;
+
+    /**
+     * Constructor for this class which rate limits the requests of each user
+     *
+     * @param cacheMap            The map which is used to cache the store requests
+     * @param admissionController The admission controller used for rate limiting, may be null
+     */
+    public PostBulkRoute(final Map<String, CacheElement<E>> cacheMap, final AdmissionController admissionController) {
+        this.cacheMap = cacheMap;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public Object handle(final Request request, final Response response) throws IOException {
+        if (request.contentLength() > StoreConstants.MAX_BULK_PAYLOAD_BYTES) {
+            response.status(413);
+            return "Payload too large";
+        }
+        final String user = AuthenticatedUser.getName(request, response);
+        if (user == null) {
+            response.status(403);
+            return "No authenticated user";
+        }
+        // One bulk request counts as one request, limited before the documents are resolved
+        if (admissionController != null) {
+            final long wait = admissionController.tryAcquire(user);
+            if (wait > 0) {
+                response.status(429);
+                response.header("Retry-After", Long.toString((wait + 999) / 1000));
+                return "Too many requests";
+            }
+        }
+        final BoundedInputStream body = new BoundedInputStream(request.raw().getInputStream(),
+                StoreConstants.MAX_BULK_PAYLOAD_BYTES);
+        final List<StoreTask> tasks = new ArrayList<>();
+        // Each task is deserialized on its own, the array is never held as a tree
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (tasks.size() == StoreConstants.MAX_BULK_SESSIONS) {
+                    response.status(413);
+                    return "Too many sessions";
+                }
+                final StoreTask task = JsonResponseWriter.GSON.fromJson(reader, StoreTask.class);
+                if (task == null || task.getDocuments().isEmpty()) {
+                    response.status(400);
+                    return "Session " + tasks.size() + " has no documents";
+                }
+                if (!user.equals(task.getUserId())) {
+                    response.status(403);
+                    return "userId of session " + tasks.size() + " does not match the authenticated user";
+                }
+                tasks.add(task);
+            }
+            reader.endArray();
+        } catch (JsonParseException | IllegalStateException | IOException e) {
+            if (body.isLimitExceeded()) {
+                response.status(413);
+                return "Payload too large";
+            }
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Rejected bulk store request: " + e.getMessage());
+            }
+            response.status(400);
+            return null;
+        }
+        if (tasks.isEmpty()) {
+            response.status(400);
+            return null;
+        }
+        response.status(201);
+        try (JsonWriter writer = JsonResponseWriter.open(request, response)) {
+            writer.beginObject();
+            writer.name("sessionIds").beginArray();
+            for (StoreTask task : tasks) {
+                final String identifier = UUID.randomUUID().toString();
+                cacheMap.put(identifier, new CacheElement<>(task));
+                writer.value(identifier);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return "";
+    }
+}
@@ -15,17 +15,25 @@
  */
 package de.gerdiproject.store.handler;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import de.gerdiproject.store.StoreConstants;
 import de.gerdiproject.store.datamodel.CacheElement;
 import de.gerdiproject.store.datamodel.ICredentials;
 import de.gerdiproject.store.datamodel.StoreTask;
-import de.gerdiproject.store.util.StoreTaskDeserializer;
+import de.gerdiproject.store.pac4j.AuthenticatedUser;
+import de.gerdiproject.store.util.AdmissionController;
+import de.gerdiproject.store.util.BoundedInputStream;
+import de.gerdiproject.store.util.JsonResponseWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.UUID;
 
@@ -38,8 +46,10 @@ import java.util.UUID;
  */
 public class PostRootRoute<E extends ICredentials> implements Route {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostRootRoute.class);
+
     private final Map<String, CacheElement<E>> cacheMap;
-    private final Gson gson;
+    private final AdmissionController admissionController;
 
     /**
      * Just this class's constructor
@@ -47,22 +57,67 @@ public class PostRootRoute<E extends ICredentials> implements Route {
      * @param cacheMap The map which is used to cache the store requests
      */
     public PostRootRoute(final Map<String, CacheElement<E>> cacheMap) {
-        final GsonBuilder gsonBuilder = new GsonBuilder();
-        final JsonDeserializer<StoreTask> jsonDeserializer = new StoreTaskDeserializer();
-        gsonBuilder.registerTypeAdapter(StoreTask.class, jsonDeserializer);
-        this.gson = gsonBuilder.create();
+        this(cacheMap, null);
+    }
+
+    /**
+     * Constructor for this class which rate limits the requests of each user
+     *
+     * @param cacheMap            The map which is used to cache the store requests
+     * @param admissionController The admission controller used for rate limiting, may be null
+     */
+    public PostRootRoute(final Map<String, CacheElement<E>> cacheMap, final AdmissionController admissionController) {
         this.cacheMap = cacheMap;
+        this.admissionController = admissionController;
     }
 
     @Override
-    public Object handle(final Request request, final Response response) {
-        final StoreTask input = gson.fromJson(request.body(), StoreTask.class);
-        if (input.getElements().isEmpty() || input.getUserId() == null || input.getUserId().isEmpty()) {
+    public Object handle(final Request request, final Response response) throws IOException {
+        if (request.contentLength() > StoreConstants.MAX_PAYLOAD_BYTES) {
+            response.status(413);
+            return "Payload too large";
+        }
+        // Rate limits and fair scheduling are keyed on the user ID, which must not be chosen freely
+        final String user = AuthenticatedUser.getName(request, response);
+        if (user == null) {
+            response.status(403);
+            return "No authenticated user";
+        }
+        // Limited before the documents are resolved, which is the expensive part
+        if (admissionController != null) {
+            final long wait = admissionController.tryAcquire(user);
+            if (wait > 0) {
+                response.status(429);
+                response.header("Retry-After", Long.toString((wait + 999) / 1000));
+                return "Too many requests";
+            }
+        }
+        final BoundedInputStream body = new BoundedInputStream(request.raw().getInputStream(),
+                StoreConstants.MAX_PAYLOAD_BYTES);
+        final StoreTask input;
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            input = JsonResponseWriter.GSON.fromJson(reader, StoreTask.class);
+        } catch (JsonParseException e) {
+            if (body.isLimitExceeded()) {
+                response.status(413);
+                return "Payload too large";
+            }
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Rejected store request: " + e.getMessage());
+            }
+            response.status(400);
+            return null;
+        }
+        if (input == null || input.getDocuments().isEmpty()) {
             response.status(400);
             return null;
         }
+        if (!user.equals(input.getUserId())) {
+            response.status(403);
+            return "userId does not match the authenticated user";
+        }
         final String identifier = UUID.randomUUID().toString();
-        cacheMap.put(identifier, new CacheElement(input));
+        cacheMap.put(identifier, new CacheElement<>(input));
         response.status(201);
         return "{ \"sessionId\": \"" + identifier + "\" }";
     }
@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.handler;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class represents a handler for the readiness probe. It evaluates a set of named checks, which must be cheap
+ * since the probe is neither authenticated nor rate limited.
+ */
+public class ReadyRoute implements Route {
+
+    private final Map<String, BooleanSupplier> checks = new LinkedHashMap<>();
+
+    /**
+     * Adds a check which must be satisfied for this service to be ready.
+     *
+     * @param name  The name under which the result of the check is reported
+     * @param check The check to be evaluated on each request
+     * @return This instance
+     */
+    public ReadyRoute addCheck(final String name, final BooleanSupplier check) {
+        this.checks.put(name, check);
+        return this;
+    }
+
+    @Override
+    public Object handle(final Request request, final Response response) {
+        boolean ready = true;
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<String, BooleanSupplier> entry : checks.entrySet()) {
+            final boolean result = entry.getValue().getAsBoolean();
+            ready &= result;
+            builder.append(", \"").append(entry.getKey()).append("\" : \"").append(result).append('"');
+        }
+        response.type("application/json");
+        response.status(ready ? 200 : 503);
+        return "{ \"ready\" : \"" + ready + "\"" + builder + " }";
+    }
+}
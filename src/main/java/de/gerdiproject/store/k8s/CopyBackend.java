@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import java.util.Queue;
+
+/**
+ * This interface represents an execution backend for copy jobs, i.e. the Kubernetes resources running the copy
+ * servers of a session.
+ */
+public interface CopyBackend {
+
+    /**
+     * Copies the queued files of a session. The queue may grow while copying. Blocks until all work is done, the
+     * session is cancelled or the session is preempted. Must not be called on request threads.
+     *
+     * @param sessionId The session
+     * @param queue     The files to be copied
+     * @param replicas  The number of copy servers to start with
+     * @return true if the session was preempted and its remaining work was queued again, false otherwise
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    boolean run(String sessionId, Queue<String> queue, int replicas) throws InterruptedException;
+
+    /**
+     * Cancels the copy of a session and removes its resources in the background. Returns immediately.
+     *
+     * @param sessionId The session
+     */
+    void cancel(String sessionId);
+
+    /**
+     * Wakes up the copy of a session, e.g. after files were added to its queue or it was preempted.
+     *
+     * @param sessionId The session
+     */
+    void wakeUp(String sessionId);
+
+    /**
+     * Checks whether or not the backend observed the state of the cluster.
+     *
+     * @return true if the backend is ready, false otherwise
+     */
+    boolean hasSynced();
+}
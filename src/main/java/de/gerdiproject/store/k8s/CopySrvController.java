@@ -0,0 +1,427 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.apis.ExtensionsV1beta1Api;
+import io.kubernetes.client.models.ExtensionsV1beta1Deployment;
+import io.kubernetes.client.models.ExtensionsV1beta1DeploymentList;
+import io.kubernetes.client.models.ExtensionsV1beta1Scale;
+import io.kubernetes.client.models.V1DeleteOptions;
+import io.kubernetes.client.models.V1ContainerStatus;
+import io.kubernetes.client.models.V1ContainerStateWaiting;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1PodCondition;
+import io.kubernetes.client.models.V1PodList;
+import io.kubernetes.client.util.Watch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * This class represents a controller for the copy server deployments of a store service. The desired number of
+ * replicas of each deployment is reconciled against the Deployments and Pods observed by informers: missing
+ * deployments are created, the replicas of existing ones are scaled and deployments which are not desired, e.g.
+ * left over by a crash, are deleted. Deployments are labelled with the owning instance and deployments of other
+ * instances sharing the namespace and copySrv label are left alone. All Kubernetes calls are executed on the
+ * controller's threads.
+ */
+public class CopySrvController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopySrvController.class);
+    private static final long RESYNC_SECONDS = 30;
+    private static final String OWNER_LABEL = "copySrvOwner";
+    // Waiting reasons of containers which do not resolve without a change of the deployment
+    private static final Set<String> STARTUP_FAILURES = new HashSet<>(Arrays.asList("ErrImagePull",
+            "ImagePullBackOff", "InvalidImageName", "CrashLoopBackOff", "CreateContainerConfigError",
+            "CreateContainerError"));
+
+    private final String namespace;
+    private final String owner;
+    private final ExtensionsV1beta1Api extensionV1Api;
+    private final BiFunction<String, Integer, ExtensionsV1beta1Deployment> deploymentTemplate;
+    private final CopySrvGarbageCollector garbageCollector;
+    private final Informer<ExtensionsV1beta1Deployment, ExtensionsV1beta1DeploymentList> deployments;
+    private final Informer<V1Pod, V1PodList> pods;
+    private final Map<String, Integer> desiredReplicas = new ConcurrentHashMap<>();
+    private final Queue<String[]> pendingDrains = new ConcurrentLinkedQueue<>();
+    private final CoreV1Api coreV1Api;
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean(false);
+    private final ExecutorService informerExecutor = Executors.newFixedThreadPool(2, daemon("copysrv-informer"));
+    private final ScheduledExecutorService reconcileExecutor = Executors
+            .newSingleThreadScheduledExecutor(daemon("copysrv-controller"));
+
+    /**
+     * Constructor for this class
+     *
+     * @param apiClient          The client used for regular calls
+     * @param watchClient        The client used for watches, its read timeout must be disabled
+     * @param namespace          The namespace of the copy servers
+     * @param copySrvLabel       The value of the copySrv label which all copy servers of this service carry
+     * @param owner              The value of the owner label, unique to this instance
+     * @param deploymentTemplate Builds the deployment for a given name and number of replicas
+     * @param garbageCollector   Deletes deployments which are not desired anymore
+     */
+    public CopySrvController(final ApiClient apiClient, final ApiClient watchClient, final String namespace,
+            final String copySrvLabel, final String owner,
+            final BiFunction<String, Integer, ExtensionsV1beta1Deployment> deploymentTemplate,
+            final CopySrvGarbageCollector garbageCollector) {
+        this.namespace = namespace;
+        this.owner = owner;
+        this.extensionV1Api = new ExtensionsV1beta1Api(apiClient);
+        this.coreV1Api = new CoreV1Api(apiClient);
+        this.deploymentTemplate = deploymentTemplate;
+        this.garbageCollector = garbageCollector;
+
+        final String selector = "copySrv=" + copySrvLabel;
+        final ExtensionsV1beta1Api watchExtensionsApi = new ExtensionsV1beta1Api(watchClient);
+        final CoreV1Api watchCoreApi = new CoreV1Api(watchClient);
+        this.deployments = new Informer<>(watchClient,
+                (version, watch) -> watchExtensionsApi.listNamespacedDeploymentCall(namespace, null, null, null, null,
+                        selector, null, version, null, watch, null, null),
+                ExtensionsV1beta1DeploymentList.class,
+                new TypeToken<Watch.Response<ExtensionsV1beta1Deployment>>() {
+                }.getType(),
+                ExtensionsV1beta1DeploymentList::getItems, list -> list.getMetadata().getResourceVersion(),
+                ExtensionsV1beta1Deployment::getMetadata);
+        this.pods = new Informer<>(watchClient,
+                (version, watch) -> watchCoreApi.listNamespacedPodCall(namespace, null, null, null, null, selector,
+                        null, version, null, watch, null, null),
+                V1PodList.class,
+                new TypeToken<Watch.Response<V1Pod>>() {
+                }.getType(),
+                V1PodList::getItems, list -> list.getMetadata().getResourceVersion(), V1Pod::getMetadata);
+        this.deployments.addListener(this::scheduleReconcile);
+        this.pods.addListener(this::notifyPodWaiters);
+        this.pods.addListener(() -> {
+            if (!pendingDrains.isEmpty()) {
+                scheduleReconcile();
+            }
+        });
+    }
+
+    /**
+     * Starts the informers and the reconcile loop.
+     */
+    public void start() {
+        informerExecutor.execute(deployments);
+        informerExecutor.execute(pods);
+        reconcileExecutor.scheduleWithFixedDelay(this::scheduleReconcile, RESYNC_SECONDS, RESYNC_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds a listener called on each change of a copy server pod. Must be called before {@link #start()}.
+     *
+     * @param listener The listener, must return quickly
+     */
+    public void addPodListener(final Runnable listener) {
+        pods.addListener(listener);
+    }
+
+    /**
+     * Checks whether or not the caches of this controller are filled.
+     *
+     * @return true if both informers are synchronized, false otherwise
+     */
+    public boolean hasSynced() {
+        return deployments.hasSynced() && pods.hasSynced();
+    }
+
+    /**
+     * Sets the desired number of replicas of a deployment, which is created if necessary. Returns immediately.
+     *
+     * @param deploymentName The name of the deployment
+     * @param replicas       The desired number of replicas
+     */
+    public void setDesiredReplicas(final String deploymentName, final int replicas) {
+        desiredReplicas.put(deploymentName, replicas);
+        scheduleReconcile();
+    }
+
+    /**
+     * Removes an idle pod from a deployment and lowers the desired number of replicas by one. The pod is detached
+     * from its ReplicaSet before the deployment is scaled down, so Kubernetes never picks a busy pod for removal.
+     * Between both steps the ReplicaSet may create a replacement pod, which is not ready yet and therefore removed
+     * first once the deployment is scaled down in the same reconcile run. Returns immediately.
+     *
+     * @param deploymentName The name of the deployment
+     * @param podName        The name of the idle pod
+     */
+    public void drainPod(final String deploymentName, final String podName) {
+        pendingDrains.add(new String[] { deploymentName, podName });
+        scheduleReconcile();
+    }
+
+    /**
+     * Checks whether or not a deployment is desired, i.e. it was neither removed nor never requested.
+     *
+     * @param deploymentName The name of the deployment
+     * @return true if the deployment is desired, false otherwise
+     */
+    public boolean isDesired(final String deploymentName) {
+        return desiredReplicas.containsKey(deploymentName);
+    }
+
+    /**
+     * Returns the desired number of replicas of a deployment.
+     *
+     * @param deploymentName The name of the deployment
+     * @return The desired number of replicas, 0 if the deployment is not desired
+     */
+    public int getDesiredReplicas(final String deploymentName) {
+        return desiredReplicas.getOrDefault(deploymentName, 0);
+    }
+
+    /**
+     * Marks a deployment as not desired anymore, it is deleted in the background. Returns immediately.
+     *
+     * @param deploymentName The name of the deployment
+     */
+    public void remove(final String deploymentName) {
+        desiredReplicas.remove(deploymentName);
+        garbageCollector.delete(deploymentName);
+        notifyPodWaiters();
+    }
+
+    /**
+     * Returns the cached pods of a deployment which are ready to receive requests.
+     *
+     * @param deploymentName The name of the deployment
+     * @return The ready pods
+     */
+    public List<V1Pod> getReadyPods(final String deploymentName) {
+        final List<V1Pod> ready = new ArrayList<>();
+        for (final V1Pod pod : pods.list()) {
+            final Map<String, String> labels = pod.getMetadata().getLabels();
+            if (labels != null && deploymentName.equals(labels.get("app")) && isReady(pod)) {
+                ready.add(pod);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Blocks until a deployment has the given number of ready pods. Must not be called on request threads. If a pod
+     * fails to start, e.g. its image can not be pulled or it crashes repeatedly, or the timeout elapses, the pods
+     * ready so far are returned.
+     *
+     * @param deploymentName The name of the deployment
+     * @param replicas       The number of pods to wait for
+     * @param timeoutMillis  The maximum time to wait
+     * @return The ready pods, an empty list if none of them started, or null if the deployment is not desired
+     *         anymore
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public List<V1Pod> awaitReadyPods(final String deploymentName, final int replicas, final long timeoutMillis)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (true) {
+                if (!desiredReplicas.containsKey(deploymentName)) {
+                    return null;
+                }
+                final List<V1Pod> ready = getReadyPods(deploymentName);
+                if (ready.size() >= replicas) {
+                    return ready;
+                }
+                final String failure = getStartupFailure(deploymentName);
+                final long remaining = deadline - System.currentTimeMillis();
+                if (failure != null || remaining <= 0) {
+                    LOGGER.warn("Only {} of {} copy servers of [{}] started: {}", ready.size(), replicas,
+                            deploymentName, failure != null ? failure : "timed out");
+                    return ready;
+                }
+                this.wait(Math.min(remaining, RESYNC_SECONDS * 1000));
+            }
+        }
+    }
+
+    /**
+     * Returns why a pod of a deployment can not start, if one of its containers waits for a reason which does not
+     * resolve by itself.
+     *
+     * @param deploymentName The name of the deployment
+     * @return The reason and message, or null if no pod failed
+     */
+    private String getStartupFailure(final String deploymentName) {
+        for (final V1Pod pod : pods.list()) {
+            final Map<String, String> labels = pod.getMetadata().getLabels();
+            if (labels == null || !deploymentName.equals(labels.get("app")) || pod.getStatus() == null
+                    || pod.getStatus().getContainerStatuses() == null) {
+                continue;
+            }
+            for (final V1ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+                final V1ContainerStateWaiting waiting = status.getState() == null ? null
+                        : status.getState().getWaiting();
+                if (waiting != null && STARTUP_FAILURES.contains(waiting.getReason())) {
+                    return pod.getMetadata().getName() + ": " + waiting.getReason() + " " + waiting.getMessage();
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void notifyPodWaiters() {
+        this.notifyAll();
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            reconcileExecutor.execute(this::reconcile);
+        }
+    }
+
+    private void reconcile() {
+        reconcileScheduled.set(false);
+        if (!deployments.hasSynced()) {
+            return;
+        }
+        drainPods();
+        for (final Map.Entry<String, Integer> desired : desiredReplicas.entrySet()) {
+            final ExtensionsV1beta1Deployment actual = deployments.get(desired.getKey());
+            try {
+                if (actual == null) {
+                    create(desired.getKey(), desired.getValue());
+                } else if (actual.getMetadata().getDeletionTimestamp() == null
+                        && !desired.getValue().equals(actual.getSpec().getReplicas())) {
+                    scale(desired.getKey(), desired.getValue());
+                }
+            } catch (ApiException e) {
+                LOGGER.warn("Couldn't reconcile deployment [{}]: {}", desired.getKey(), e.getResponseBody());
+            }
+        }
+        // Deployments of this instance which are not desired anymore, e.g. from before a crash
+        for (final ExtensionsV1beta1Deployment actual : deployments.list()) {
+            final String name = actual.getMetadata().getName();
+            final Map<String, String> labels = actual.getMetadata().getLabels();
+            if (!desiredReplicas.containsKey(name) && actual.getMetadata().getDeletionTimestamp() == null
+                    && labels != null && owner.equals(labels.get(OWNER_LABEL))) {
+                garbageCollector.delete(name);
+            }
+        }
+    }
+
+    private void drainPods() {
+        final List<String[]> retries = new ArrayList<>();
+        String[] drain;
+        while ((drain = pendingDrains.poll()) != null) {
+            final String deploymentName = drain[0];
+            final V1Pod pod = pods.get(drain[1]);
+            if (pod == null || !desiredReplicas.containsKey(deploymentName)
+                    || !deploymentName.equals(pod.getMetadata().getLabels().get("app"))) {
+                // Gone, or drained already
+                continue;
+            }
+            // Changing the app label removes the pod from the ReplicaSet's selector. The cached pod is shared with
+            // readers, so it is patched on the server only and the watch updates the cache
+            final List<Map<String, String>> patch = Arrays.asList(
+                    jsonPatch("test", "/metadata/labels/app", deploymentName),
+                    jsonPatch("replace", "/metadata/labels/app", deploymentName + "-drained"));
+            try {
+                coreV1Api.patchNamespacedPod(pod.getMetadata().getName(), namespace, patch, null, null);
+            } catch (ApiException e) {
+                if (e.getCode() == 404 || e.getCode() == 422) {
+                    // Deleted, or relabeled since it was cached
+                    continue;
+                }
+                LOGGER.warn("Couldn't detach pod [{}]: {}", drain[1], e.getResponseBody());
+                retries.add(drain);
+                continue;
+            }
+            desiredReplicas.computeIfPresent(deploymentName, (name, replicas) -> Math.max(replicas - 1, 0));
+            try {
+                coreV1Api.deleteNamespacedPodCall(pod.getMetadata().getName(), namespace, null,
+                        new V1DeleteOptions().gracePeriodSeconds(0L), null, null, null, null, null, null)
+                        .execute().body().close();
+            } catch (ApiException | IOException e) {
+                // The detached pod is not part of the deployment anymore, the orphan is only logged
+                LOGGER.warn("Couldn't delete drained pod [{}]: {}", drain[1], e.toString());
+            }
+        }
+        pendingDrains.addAll(retries);
+    }
+
+    private static Map<String, String> jsonPatch(final String op, final String path, final String value) {
+        final Map<String, String> operation = new LinkedHashMap<>();
+        operation.put("op", op);
+        operation.put("path", path);
+        operation.put("value", value);
+        return operation;
+    }
+
+    private void create(final String deploymentName, final int replicas) throws ApiException {
+        final ExtensionsV1beta1Deployment deployment = deploymentTemplate.apply(deploymentName, replicas);
+        deployment.getMetadata().putLabelsItem(OWNER_LABEL, owner);
+        try {
+            extensionV1Api.createNamespacedDeployment(namespace, deployment, null, null, null);
+        } catch (ApiException e) {
+            // The informer did not observe the deployment yet
+            if (e.getCode() != 409) {
+                throw e;
+            }
+        }
+    }
+
+    private void scale(final String deploymentName, final int replicas) throws ApiException {
+        final ExtensionsV1beta1Scale scale = extensionV1Api.readNamespacedDeploymentScale(deploymentName, namespace,
+                null);
+        scale.getSpec().setReplicas(replicas);
+        extensionV1Api.replaceNamespacedDeploymentScale(deploymentName, namespace, scale, null, null);
+    }
+
+    private static boolean isReady(final V1Pod pod) {
+        if (pod.getMetadata().getDeletionTimestamp() != null || pod.getStatus() == null
+                || pod.getStatus().getPodIP() == null || pod.getStatus().getConditions() == null) {
+            return false;
+        }
+        for (final V1PodCondition condition : pod.getStatus().getConditions()) {
+            if ("Ready".equals(condition.getType())) {
+                return "True".equals(condition.getStatus());
+            }
+        }
+        return false;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
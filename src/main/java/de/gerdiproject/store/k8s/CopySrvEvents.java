@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class represents the events reported by copy servers. Copy servers call back when they are ready, when a file
+ * is finished and when their whole batch is finished, so orchestrators react immediately instead of polling the copy
+ * servers.
+ */
+public class CopySrvEvents {
+
+    /**
+     * This depicts the type of a copy server event.
+     */
+    public enum Type {
+        READY, FILE_FINISHED, BATCH_FINISHED, THROTTLED;
+    }
+
+    private final Set<String> finishedBatches = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> currentBatches = new ConcurrentHashMap<>();
+    private final AtomicLong batchSequence = new AtomicLong();
+    private final Map<String, Set<String>> finishedFiles = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> batchListeners = new CopyOnWriteArrayList<>();
+    private final List<BiConsumer<String, Long>> throttleListeners = new CopyOnWriteArrayList<>();
+    private long generation = 0;
+
+    /**
+     * Records an event of a copy server and wakes up all waiting orchestrators. BATCH_FINISHED events of any batch
+     * but the current one of the copy server are ignored.
+     *
+     * @param sessionId The session the event belongs to, may be null for READY events
+     * @param podIP     The address of the copy server
+     * @param type      The type of the event
+     * @param fileName  The finished file for FILE_FINISHED events, null otherwise
+     * @param batchId   The finished batch for BATCH_FINISHED events, 0 otherwise
+     */
+    public void report(final String sessionId, final String podIP, final Type type, final String fileName,
+            final long batchId) {
+        if (type == Type.BATCH_FINISHED) {
+            if (!Long.valueOf(batchId).equals(currentBatches.get(podIP))) {
+                // A late report of a previous batch
+                return;
+            }
+            finishedBatches.add(podIP);
+            for (final Consumer<String> listener : batchListeners) {
+                listener.accept(podIP);
+            }
+        } else if (type == Type.FILE_FINISHED && sessionId != null && fileName != null) {
+            finishedFiles.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(fileName);
+        }
+        signal();
+    }
+
+    /**
+     * Records that the source of a file throttled a copy server, e.g. with 429 or 503.
+     *
+     * @param url              The throttled file
+     * @param retryAfterMillis The time the source asked to wait, 0 if unknown
+     */
+    public void reportThrottled(final String url, final long retryAfterMillis) {
+        for (final BiConsumer<String, Long> listener : throttleListeners) {
+            listener.accept(url, retryAfterMillis);
+        }
+        signal();
+    }
+
+    /**
+     * Adds a listener called with the URL and the requested wait time of each throttled file.
+     *
+     * @param listener The listener
+     */
+    public void addThrottleListener(final BiConsumer<String, Long> listener) {
+        throttleListeners.add(listener);
+    }
+
+    /**
+     * Adds a listener called with the address of each copy server which finished its batch.
+     *
+     * @param listener The listener
+     */
+    public void addBatchListener(final Consumer<String> listener) {
+        batchListeners.add(listener);
+    }
+
+    /**
+     * Starts a new batch of a copy server, to be called before the batch is sent to it. Removes the finished state of
+     * the previous batch.
+     *
+     * @param podIP The address of the copy server
+     * @return The ID of the new batch, which the copy server reports back once the batch is finished
+     */
+    public long startBatch(final String podIP) {
+        final long batchId = batchSequence.incrementAndGet();
+        currentBatches.put(podIP, batchId);
+        finishedBatches.remove(podIP);
+        return batchId;
+    }
+
+    /**
+     * Checks whether or not a copy server reported to have finished its batch, and removes the report.
+     *
+     * @param podIP The address of the copy server
+     * @return true if the batch was reported as finished, false otherwise
+     */
+    public boolean consumeBatchFinished(final String podIP) {
+        if (!finishedBatches.remove(podIP)) {
+            return false;
+        }
+        // Repeated reports of the consumed batch are ignored as well
+        currentBatches.remove(podIP);
+        return true;
+    }
+
+    /**
+     * Returns the files of a session which were reported as finished.
+     *
+     * @param sessionId The session
+     * @return The names of the finished files
+     */
+    public Set<String> getFinishedFiles(final String sessionId) {
+        return finishedFiles.getOrDefault(sessionId, Collections.<String>emptySet());
+    }
+
+    /**
+     * Removes all events of a session.
+     *
+     * @param sessionId The session
+     */
+    public void forget(final String sessionId) {
+        finishedFiles.remove(sessionId);
+    }
+
+    /**
+     * Returns the current generation, which changes on each signal.
+     *
+     * @return The generation
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Wakes up all waiting orchestrators, e.g. on pod changes or new documents.
+     */
+    public synchronized void signal() {
+        generation++;
+        this.notifyAll();
+    }
+
+    /**
+     * Blocks until a signal newer than the given generation arrives or the timeout elapses.
+     *
+     * @param seen    The last generation seen by the caller
+     * @param timeout The maximum time to wait in milliseconds
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public synchronized void await(final long seen, final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (generation == seen && remaining > 0) {
+            this.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+}
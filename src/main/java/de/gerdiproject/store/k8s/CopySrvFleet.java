@@ -0,0 +1,370 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import de.gerdiproject.store.datamodel.CopyBatch;
+import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.util.WeightedFairQueue;
+import io.kubernetes.client.models.V1Pod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * This class represents a shared fleet of copy servers, i.e. a single autoscaled deployment serving all sessions of a
+ * store service. The files of each session are split into batches, which are queued per user and dispatched to idle
+ * copy servers in weighted round robin, so a single user can not monopolize the fleet.
+ *
+ * @param <E> The type used to store the credentials. Must implement the ICredentials interface.
+ */
+public class CopySrvFleet<E extends ICredentials> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopySrvFleet.class);
+    /**
+     * Copy servers which report to be done without ever reporting to be busy are considered done after this time
+     */
+    private static final long START_GRACE_MILLIS = 10000;
+
+    /**
+     * This interface represents the transmission of a batch to a copy server.
+     *
+     * @param <E> The type used to store the credentials.
+     */
+    @FunctionalInterface
+    public interface Sender<E extends ICredentials> {
+        /**
+         * Sends a batch to a copy server.
+         *
+         * @param batch The batch
+         * @param podIP The address of the copy server
+         * @return true if the batch was accepted, false otherwise
+         */
+        boolean send(CopyBatch<E> batch, String podIP);
+    }
+
+    /**
+     * This interface represents a gate deciding whether or not a batch may be started now, e.g. because of the
+     * connection limits of its source hosts.
+     *
+     * @param <E> The type used to store the credentials.
+     */
+    public interface Gate<E extends ICredentials> {
+        /**
+         * Reserves what a batch needs to run.
+         *
+         * @param batch The batch
+         * @return true if the batch may be started, false if it has to wait
+         */
+        boolean tryAcquire(CopyBatch<E> batch);
+
+        /**
+         * Releases the reservation of a batch.
+         *
+         * @param batch    The batch
+         * @param finished true if the batch ran to its end, false if it was not started
+         */
+        void release(CopyBatch<E> batch, boolean finished);
+    }
+
+    private final CopySrvController controller;
+    private final String deploymentName;
+    private final int minReplicas;
+    private final int maxReplicas;
+    private final int batchSize;
+    private final Sender<E> sender;
+    private final Predicate<String> doneCheck;
+    private final Consumer<CopyBatch<E>> sessionFinished;
+    private Predicate<String> reportedDone = podIP -> false;
+    private Gate<E> gate = new Gate<E>() {
+        @Override
+        public boolean tryAcquire(final CopyBatch<E> batch) {
+            return true;
+        }
+
+        @Override
+        public void release(final CopyBatch<E> batch, final boolean finished) {
+            // nothing reserved
+        }
+    };
+    private long doneCheckMillis = 0;
+    private long lastDoneCheck = 0;
+    private final WeightedFairQueue<CopyBatch<E>> queue = new WeightedFairQueue<>();
+    private final Map<String, Assignment<E>> busy = new ConcurrentHashMap<>();
+    private final Map<String, CopyBatch<E>> activeSessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "copysrv-fleet");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for this class
+     *
+     * @param controller      The controller managing the fleet's deployment
+     * @param deploymentName  The name of the fleet's deployment
+     * @param minReplicas     The number of copy servers kept running without work
+     * @param maxReplicas     The maximum number of copy servers
+     * @param batchSize       The maximum number of files per batch
+     * @param sender          Sends a batch to a copy server
+     * @param doneCheck       Checks whether or not the copy server at an address finished its batch
+     * @param sessionFinished Called once all batches of a session are done, with a batch describing the session
+     */
+    public CopySrvFleet(final CopySrvController controller, final String deploymentName, final int minReplicas,
+            final int maxReplicas, final int batchSize, final Sender<E> sender, final Predicate<String> doneCheck,
+            final Consumer<CopyBatch<E>> sessionFinished) {
+        this.controller = controller;
+        this.deploymentName = deploymentName;
+        this.minReplicas = minReplicas;
+        this.maxReplicas = maxReplicas;
+        this.batchSize = batchSize;
+        this.sender = sender;
+        this.doneCheck = doneCheck;
+        this.sessionFinished = sessionFinished;
+    }
+
+    /**
+     * Creates the fleet's deployment and starts dispatching.
+     */
+    public void start() {
+        controller.setDesiredReplicas(deploymentName, minReplicas);
+        executor.scheduleWithFixedDelay(this::dispatch, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Lets copy servers report finished batches, so the done check is only a slow fallback. Must be called before
+     * {@link #start()}.
+     *
+     * @param reportedDone    Checks and consumes whether or not the copy server at an address reported its batch
+     *                        as finished
+     * @param doneCheckMillis The interval of the fallback done check in milliseconds
+     */
+    public void useCompletionEvents(final Predicate<String> reportedDone, final long doneCheckMillis) {
+        this.reportedDone = reportedDone;
+        this.doneCheckMillis = doneCheckMillis;
+    }
+
+    /**
+     * Sets the gate deciding whether or not a batch may be started now. Must be called before {@link #start()}.
+     *
+     * @param gate The gate
+     */
+    public void useGate(final Gate<E> gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * Dispatches immediately, e.g. after a copy server reported its batch as finished. Returns immediately.
+     */
+    public void wakeUp() {
+        executor.execute(this::dispatch);
+    }
+
+    /**
+     * Queues the files of a session. May be called several times for the same session.
+     *
+     * @param sessionId The session
+     * @param userId    The user owning the session, used for fair scheduling
+     * @param creds     The credentials of the session
+     * @param targetDir The target directory of the session
+     * @param urls      The files to be copied
+     */
+    public synchronized void submit(final String sessionId, final String userId, final E creds, final String targetDir,
+            final List<String> urls) {
+        activeSessions.putIfAbsent(sessionId,
+                new CopyBatch<>(sessionId, userId, creds, targetDir, Collections.<String>emptyList()));
+        for (int i = 0; i < urls.size(); i += batchSize) {
+            final List<String> batch = new ArrayList<>(urls.subList(i, Math.min(i + batchSize, urls.size())));
+            queue.add(userId, new CopyBatch<>(sessionId, userId, creds, targetDir, batch));
+        }
+    }
+
+    /**
+     * Queues further files of an active session, using the session's user, credentials and target directory.
+     *
+     * @param sessionId The session
+     * @param urls      The files to be copied
+     * @return true if the files were queued, false if the session is not active
+     */
+    public synchronized boolean append(final String sessionId, final List<String> urls) {
+        final CopyBatch<E> session = activeSessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        submit(sessionId, session.getUserId(), session.getCredentials(), session.getTargetDir(), urls);
+        return true;
+    }
+
+    /**
+     * Checks whether or not a session still has queued or running batches.
+     *
+     * @param sessionId The session
+     * @return true if the session is active, false otherwise
+     */
+    public boolean isActive(final String sessionId) {
+        return activeSessions.containsKey(sessionId);
+    }
+
+    /**
+     * Removes the queued batches of a session. Batches which are already running are finished.
+     *
+     * @param sessionId The session
+     */
+    public synchronized void cancel(final String sessionId) {
+        activeSessions.remove(sessionId);
+        queue.removeIf(batch -> batch.getSessionId().equals(sessionId));
+    }
+
+    /**
+     * Sets the scheduling weight of a user. Users without explicit weight have a weight of 1.
+     *
+     * @param userId The user
+     * @param weight The weight, must be positive
+     */
+    public void setUserWeight(final String userId, final int weight) {
+        queue.setWeight(userId, weight);
+    }
+
+    private void dispatch() {
+        try {
+            collectFinished();
+            final List<V1Pod> idle = new ArrayList<>();
+            for (final V1Pod pod : controller.getReadyPods(deploymentName)) {
+                if (!busy.containsKey(pod.getMetadata().getName())) {
+                    idle.add(pod);
+                }
+            }
+            final List<CopyBatch<E>> deferred = new ArrayList<>();
+            for (final V1Pod pod : new ArrayList<>(idle)) {
+                final CopyBatch<E> batch = nextBatch(deferred);
+                if (batch == null) {
+                    break;
+                }
+                final String podIP = pod.getStatus().getPodIP();
+                if (sender.send(batch, podIP)) {
+                    busy.put(pod.getMetadata().getName(), new Assignment<>(batch, podIP));
+                    idle.remove(pod);
+                } else {
+                    LOGGER.warn("Copy server {} rejected a batch of session {}", podIP, batch.getSessionId());
+                    gate.release(batch, false);
+                    queue.add(batch.getUserId(), batch);
+                }
+            }
+            // Batches held back by the gate don't need further copy servers
+            final int waiting = queue.size();
+            for (final CopyBatch<E> batch : deferred) {
+                queue.add(batch.getUserId(), batch);
+            }
+            autoscale(idle, waiting);
+        } catch (RuntimeException e) {
+            LOGGER.error("Dispatching to the copy server fleet failed.", e);
+        }
+    }
+
+    private CopyBatch<E> nextBatch(final List<CopyBatch<E>> deferred) {
+        CopyBatch<E> batch;
+        while ((batch = queue.poll()) != null) {
+            if (!activeSessions.containsKey(batch.getSessionId())) {
+                continue;
+            }
+            if (gate.tryAcquire(batch)) {
+                return batch;
+            }
+            deferred.add(batch);
+        }
+        return null;
+    }
+
+    private void collectFinished() {
+        final long now = System.currentTimeMillis();
+        final boolean check = now - lastDoneCheck >= doneCheckMillis;
+        if (check) {
+            lastDoneCheck = now;
+        }
+        for (final Map.Entry<String, Assignment<E>> entry : busy.entrySet()) {
+            final Assignment<E> assignment = entry.getValue();
+            if (reportedDone.test(assignment.podIP)) {
+                busy.remove(entry.getKey());
+                gate.release(assignment.batch, true);
+            } else if (!check) {
+                continue;
+            } else if (!doneCheck.test(assignment.podIP)) {
+                assignment.seenRunning = true;
+            } else if (assignment.seenRunning || now - assignment.since > START_GRACE_MILLIS) {
+                busy.remove(entry.getKey());
+                gate.release(assignment.batch, true);
+            }
+        }
+        final List<CopyBatch<E>> finished = new ArrayList<>();
+        synchronized (this) {
+            for (final CopyBatch<E> session : activeSessions.values()) {
+                if (!hasWork(session.getSessionId())) {
+                    activeSessions.remove(session.getSessionId());
+                    finished.add(session);
+                }
+            }
+        }
+        for (final CopyBatch<E> session : finished) {
+            sessionFinished.accept(session);
+        }
+    }
+
+    private boolean hasWork(final String sessionId) {
+        for (final Assignment<E> assignment : busy.values()) {
+            if (assignment.batch.getSessionId().equals(sessionId)) {
+                return true;
+            }
+        }
+        return queue.anyMatch(batch -> batch.getSessionId().equals(sessionId));
+    }
+
+    private void autoscale(final List<V1Pod> idle, final int waiting) {
+        final int desired = Math.max(minReplicas, Math.min(maxReplicas, waiting + busy.size()));
+        final int current = controller.getDesiredReplicas(deploymentName);
+        if (desired > current) {
+            controller.setDesiredReplicas(deploymentName, desired);
+        } else if (desired < current) {
+            // Only idle copy servers are removed
+            for (int i = 0; i < current - desired && i < idle.size(); i++) {
+                controller.drainPod(deploymentName, idle.get(i).getMetadata().getName());
+            }
+        }
+    }
+
+    /**
+     * A batch running on a copy server
+     */
+    private static class Assignment<E extends ICredentials> {
+        private final CopyBatch<E> batch;
+        private final String podIP;
+        private final long since = System.currentTimeMillis();
+        private boolean seenRunning = false;
+
+        Assignment(final CopyBatch<E> batch, final String podIP) {
+            this.batch = batch;
+            this.podIP = podIP;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import de.gerdiproject.store.StoreConstants;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.ExtensionsV1beta1Api;
+import io.kubernetes.client.models.ExtensionsV1beta1Deployment;
+import io.kubernetes.client.models.V1DeleteOptions;
+import io.kubernetes.client.models.V1OwnerReference;
+import io.kubernetes.client.models.V1beta1ReplicaSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class represents a reconciler which deletes copy server deployments in the background. Deletions are
+ * coalesced and sent with background propagation, so Kubernetes removes the ReplicaSets and Pods through their owner
+ * references. Failed deletions are retried with exponential backoff.
+ */
+public class CopySrvGarbageCollector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopySrvGarbageCollector.class);
+
+    private final ExtensionsV1beta1Api extensionV1Api;
+    private final String namespace;
+    private final String copySrvLabel;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean collectAll = new AtomicBoolean(false);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "copysrv-gc");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long backoff = 0;
+
+    /**
+     * Constructor for this class
+     *
+     * @param apiClient    The client used to access Kubernetes
+     * @param namespace    The namespace of the copy servers
+     * @param copySrvLabel The value of the copySrv label which all copy servers of this service carry
+     */
+    public CopySrvGarbageCollector(final ApiClient apiClient, final String namespace, final String copySrvLabel) {
+        this.extensionV1Api = new ExtensionsV1beta1Api(apiClient);
+        this.namespace = namespace;
+        this.copySrvLabel = copySrvLabel;
+    }
+
+    /**
+     * Requests the deletion of a deployment. Returns immediately.
+     *
+     * @param deploymentName The name of the deployment
+     */
+    public void delete(final String deploymentName) {
+        pending.add(deploymentName);
+        schedule(0);
+    }
+
+    /**
+     * Requests the deletion of all copy server deployments of this service. Returns immediately.
+     */
+    public void deleteAll() {
+        collectAll.set(true);
+        schedule(0);
+    }
+
+    /**
+     * Checks whether or not deletions are still pending.
+     *
+     * @return true if there are pending deletions, false otherwise
+     */
+    public boolean hasPending() {
+        return collectAll.get() || !pending.isEmpty();
+    }
+
+    private void schedule(final long delay) {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::reconcile, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconcile() {
+        scheduled.set(false);
+        boolean failed = false;
+        if (collectAll.getAndSet(false)) {
+            try {
+                final String selector = "copySrv=" + copySrvLabel;
+                for (final ExtensionsV1beta1Deployment deployment : extensionV1Api.listNamespacedDeployment(namespace,
+                        true, null, null, null, selector, null, null, null, null).getItems()) {
+                    pending.add(deployment.getMetadata().getName());
+                }
+                // Deployments without labels are found through the owner references of their ReplicaSets
+                for (final V1beta1ReplicaSet replicaSet : extensionV1Api.listNamespacedReplicaSet(namespace, true,
+                        null, null, null, selector, null, null, null, null).getItems()) {
+                    final List<V1OwnerReference> owners = replicaSet.getMetadata().getOwnerReferences();
+                    if (owners != null) {
+                        for (final V1OwnerReference owner : owners) {
+                            if ("Deployment".equals(owner.getKind())) {
+                                pending.add(owner.getName());
+                            }
+                        }
+                    }
+                }
+            } catch (ApiException e) {
+                LOGGER.warn("Couldn't list copy server deployments: {}", e.getResponseBody());
+                collectAll.set(true);
+                failed = true;
+            }
+        }
+
+        // Work on a snapshot, requests arriving meanwhile are handled by the next pass
+        final Set<String> batch = new HashSet<>(pending);
+        for (final String name : batch) {
+            if (deleteDeployment(name)) {
+                pending.remove(name);
+            } else {
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            backoff = Math.min(Math.max(backoff * 2, StoreConstants.GC_MIN_BACKOFF_MILLIS),
+                    StoreConstants.GC_MAX_BACKOFF_MILLIS);
+            schedule(backoff);
+        } else {
+            backoff = 0;
+            if (hasPending()) {
+                schedule(0);
+            }
+        }
+    }
+
+    private boolean deleteDeployment(final String name) {
+        try {
+            final com.squareup.okhttp.Response response = extensionV1Api.deleteNamespacedDeploymentCall(name,
+                    namespace, null, new V1DeleteOptions().gracePeriodSeconds(0L).propagationPolicy("Background"),
+                    null, null, null, null, null, null).execute();
+            response.body().close();
+            if (response.isSuccessful() || response.code() == 404) {
+                return true;
+            }
+            LOGGER.warn("Couldn't delete deployment [{}] with reason: {}", name, response.message());
+        } catch (ApiException | IOException e) {
+            LOGGER.warn("Couldn't delete deployment [{}]: {}", name, e.toString());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import com.google.gson.reflect.TypeToken;
+import de.gerdiproject.store.util.FileBundler;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.BatchV1Api;
+import io.kubernetes.client.models.V1DeleteOptions;
+import io.kubernetes.client.models.V1Job;
+import io.kubernetes.client.models.V1JobCondition;
+import io.kubernetes.client.models.V1JobList;
+import io.kubernetes.client.models.V1JobSpec;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1PodTemplateSpec;
+import io.kubernetes.client.util.Watch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class represents an execution backend running the copy servers of a session as batch/v1 Jobs. The files of a
+ * session are split into shards, each shard is copied by the single pod of its own Job, which fetches the shard from
+ * the store service and terminates once it is done. Completion is taken from the Job status, finished Jobs are
+ * removed by Kubernetes after a TTL.
+ */
+public class CopySrvJobBackend implements CopyBackend {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopySrvJobBackend.class);
+    private static final long RESYNC_MILLIS = 30000;
+
+    /**
+     * This interface represents the parts of a session the backend does not manage itself.
+     */
+    public interface Listener {
+        /**
+         * Called while the copy server of a shard is running.
+         *
+         * @param sessionId The session
+         * @param podIP     The address of the copy server
+         */
+        void shardRunning(String sessionId, String podIP);
+
+        /**
+         * Called once the Job of a shard finished.
+         *
+         * @param sessionId The session
+         * @param urls      The files of the shard
+         * @param succeeded true if the Job completed, false if it failed
+         */
+        void shardFinished(String sessionId, List<String> urls, boolean succeeded);
+
+        /**
+         * Stops accepting files for a session, unless some were added meanwhile.
+         *
+         * @param sessionId The session
+         * @return true if no further files will be added, false otherwise
+         */
+        boolean close(String sessionId);
+
+        /**
+         * Checks and resets whether or not a session has to give up its copy servers.
+         *
+         * @param sessionId The session
+         * @return true if the session was preempted, false otherwise
+         */
+        boolean preempted(String sessionId);
+    }
+
+    /**
+     * This interface represents a factory for the pod templates of the Jobs.
+     */
+    @FunctionalInterface
+    public interface PodTemplate {
+        /**
+         * Creates the pod template of a Job.
+         *
+         * @param jobName   The name of the Job
+         * @param sessionId The session of the shard
+         * @param index     The index of the shard within the session
+         * @return The pod template, its restart policy must be OnFailure or Never
+         */
+        V1PodTemplateSpec create(String jobName, String sessionId, int index);
+    }
+
+    private final BatchV1Api batchApi;
+    private final String namespace;
+    private final String namePrefix;
+    private final String copySrvLabel;
+    private final PodTemplate podTemplate;
+    private final CopySrvController controller;
+    private final Listener listener;
+    private final int backoffLimit;
+    private final int ttlSeconds;
+    private final Informer<V1Job, V1JobList> jobs;
+    private final Map<String, List<Shard>> shards = new ConcurrentHashMap<>();
+    private final ExecutorService informerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "copysrv-job-informer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for this class
+     *
+     * @param apiClient    The client used for calls
+     * @param watchClient  The client used for watches, its read timeout must be disabled
+     * @param namespace    The namespace of the Jobs
+     * @param namePrefix   The prefix of the Job names, followed by session and shard index
+     * @param copySrvLabel The value of the copySrv label identifying the resources of this service
+     * @param podTemplate  Creates the pod templates of the Jobs
+     * @param controller   The controller whose pod cache contains the pods of the Jobs
+     * @param listener     Receives the progress of the shards
+     * @param backoffLimit The number of retries of a failed shard
+     * @param ttlSeconds   The time finished Jobs are kept
+     */
+    public CopySrvJobBackend(final ApiClient apiClient, final ApiClient watchClient, final String namespace,
+            final String namePrefix, final String copySrvLabel, final PodTemplate podTemplate,
+            final CopySrvController controller, final Listener listener, final int backoffLimit,
+            final int ttlSeconds) {
+        this.batchApi = new BatchV1Api(apiClient);
+        this.namespace = namespace;
+        this.namePrefix = namePrefix;
+        this.copySrvLabel = copySrvLabel;
+        this.podTemplate = podTemplate;
+        this.controller = controller;
+        this.listener = listener;
+        this.backoffLimit = backoffLimit;
+        this.ttlSeconds = ttlSeconds;
+
+        final BatchV1Api watchBatchApi = new BatchV1Api(watchClient);
+        this.jobs = new Informer<>(watchClient,
+                (version, watch) -> watchBatchApi.listNamespacedJobCall(namespace, null, null, null, null,
+                        "copySrv=" + copySrvLabel, null, version, null, watch, null, null),
+                V1JobList.class,
+                new TypeToken<Watch.Response<V1Job>>() {
+                }.getType(),
+                V1JobList::getItems, list -> list.getMetadata().getResourceVersion(), V1Job::getMetadata);
+        this.jobs.addListener(this::notifyWaiters);
+        this.controller.addPodListener(this::notifyWaiters);
+    }
+
+    /**
+     * Starts the informer of the Jobs.
+     */
+    public void start() {
+        informerExecutor.execute(jobs);
+    }
+
+    @Override
+    public boolean hasSynced() {
+        return jobs.hasSynced();
+    }
+
+    /**
+     * Returns the files of a shard, requested by the pod of its Job.
+     *
+     * @param sessionId The session
+     * @param index     The index of the shard
+     * @return The files, or null if the shard does not exist
+     */
+    public List<String> getShard(final String sessionId, final int index) {
+        final List<Shard> sessionShards = shards.get(sessionId);
+        if (sessionShards == null) {
+            return null;
+        }
+        for (final Shard shard : sessionShards) {
+            if (shard.index == index) {
+                return shard.urls;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean run(final String sessionId, final Queue<String> queue, final int replicas)
+            throws InterruptedException {
+        final List<Shard> sessionShards = new CopyOnWriteArrayList<>();
+        if (shards.putIfAbsent(sessionId, sessionShards) != null) {
+            throw new IllegalStateException("Session " + sessionId + " is already running.");
+        }
+        int nextIndex = 0;
+        int shardCount = Math.max(1, replicas);
+        while (shards.get(sessionId) == sessionShards) {
+            if (listener.preempted(sessionId) && requeue(sessionShards, queue)) {
+                shards.remove(sessionId, sessionShards);
+                return true;
+            }
+
+            // Work added to the queue is split into further shards
+            final List<String> urls = new ArrayList<>();
+            String url;
+            while ((url = queue.poll()) != null) {
+                urls.add(url);
+            }
+            // Bundles of small files stay in one shard
+            final List<List<String>> bundles = FileBundler.bundle(urls);
+            for (int i = 0; i < shardCount && i < bundles.size(); i++) {
+                final List<String> shardUrls = new ArrayList<>();
+                for (int j = i; j < bundles.size(); j += shardCount) {
+                    shardUrls.addAll(bundles.get(j));
+                }
+                final Shard shard = new Shard(namePrefix + sessionId + "-" + nextIndex, nextIndex,
+                        Collections.unmodifiableList(shardUrls));
+                nextIndex++;
+                sessionShards.add(shard);
+                create(shard, sessionId);
+            }
+            // further shards for documents added while copying
+            shardCount = 1;
+
+            boolean running = false;
+            for (final Shard shard : sessionShards) {
+                running |= !shard.finished && observe(sessionId, shard);
+            }
+            if (!running && queue.isEmpty() && listener.close(sessionId)) {
+                break;
+            }
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    this.wait(RESYNC_MILLIS);
+                }
+            }
+        }
+        shards.remove(sessionId, sessionShards);
+        return false;
+    }
+
+    @Override
+    public void cancel(final String sessionId) {
+        final List<Shard> sessionShards = shards.remove(sessionId);
+        if (sessionShards != null) {
+            for (final Shard shard : sessionShards) {
+                if (!shard.finished) {
+                    delete(shard.jobName);
+                }
+            }
+        }
+        notifyWaiters();
+    }
+
+    @Override
+    public void wakeUp(final String sessionId) {
+        notifyWaiters();
+    }
+
+    /**
+     * Checks the Job of a shard and reports its state.
+     *
+     * @return true if the shard is still running
+     */
+    private boolean observe(final String sessionId, final Shard shard) {
+        final V1Job job = jobs.get(shard.jobName);
+        if (job == null) {
+            // Not observed yet
+            return true;
+        }
+        final String state = finishedState(job);
+        if (state == null) {
+            for (final V1Pod pod : controller.getReadyPods(shard.jobName)) {
+                listener.shardRunning(sessionId, pod.getStatus().getPodIP());
+            }
+            return true;
+        }
+        shard.finished = true;
+        if (!"Complete".equals(state)) {
+            LOGGER.warn("Job [{}] of session {} failed.", shard.jobName, sessionId);
+        }
+        listener.shardFinished(sessionId, shard.urls, "Complete".equals(state));
+        return false;
+    }
+
+    /**
+     * Deletes the Jobs of all unfinished shards and queues their files again.
+     *
+     * @return true if work was queued again, false if all shards are finished anyway
+     */
+    private boolean requeue(final List<Shard> sessionShards, final Queue<String> queue) {
+        final List<String> unfinished = new ArrayList<>();
+        for (final Shard shard : sessionShards) {
+            if (!shard.finished) {
+                unfinished.addAll(shard.urls);
+            }
+        }
+        if (unfinished.isEmpty() && queue.isEmpty()) {
+            return false;
+        }
+        for (final Shard shard : sessionShards) {
+            if (!shard.finished) {
+                delete(shard.jobName);
+            }
+        }
+        queue.addAll(unfinished);
+        return true;
+    }
+
+    private static String finishedState(final V1Job job) {
+        if (job.getStatus() == null || job.getStatus().getConditions() == null) {
+            return null;
+        }
+        for (final V1JobCondition condition : job.getStatus().getConditions()) {
+            if (("Complete".equals(condition.getType()) || "Failed".equals(condition.getType()))
+                    && "True".equals(condition.getStatus())) {
+                return condition.getType();
+            }
+        }
+        return null;
+    }
+
+    private void create(final Shard shard, final String sessionId) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put("app", shard.jobName);
+        labels.put("copySrv", copySrvLabel);
+        final V1Job job = new V1Job().apiVersion("batch/v1").kind("Job")
+                .metadata(new V1ObjectMeta().name(shard.jobName).labels(labels))
+                .spec(new V1JobSpec().completions(1).parallelism(1).backoffLimit(backoffLimit)
+                        .ttlSecondsAfterFinished(ttlSeconds)
+                        .template(podTemplate.create(shard.jobName, sessionId, shard.index)));
+        try {
+            batchApi.createNamespacedJob(namespace, job, null, null, null);
+        } catch (ApiException e) {
+            if (e.getCode() != 409) {
+                // Reported as failed shard, so the session does not wait forever
+                LOGGER.error("Couldn't create job [{}]: {}", shard.jobName, e.getResponseBody());
+                shard.finished = true;
+                listener.shardFinished(sessionId, shard.urls, false);
+            }
+        }
+    }
+
+    private void delete(final String jobName) {
+        try {
+            batchApi.deleteNamespacedJobCall(jobName, namespace, null,
+                    new V1DeleteOptions().gracePeriodSeconds(0L).propagationPolicy("Background"), null, null,
+                    null, null, null, null).execute().body().close();
+        } catch (ApiException | IOException e) {
+            // Removed by its TTL at the latest once its pod gives up
+            LOGGER.warn("Couldn't delete job [{}]: {}", jobName, e.toString());
+        }
+    }
+
+    private synchronized void notifyWaiters() {
+        this.notifyAll();
+    }
+
+    /**
+     * A part of the files of a session, copied by one Job
+     */
+    private static class Shard {
+        private final String jobName;
+        private final int index;
+        private final List<String> urls;
+        private volatile boolean finished = false;
+
+        Shard(final String jobName, final int index, final List<String> urls) {
+            this.jobName = jobName;
+            this.index = index;
+            this.urls = urls;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import de.gerdiproject.store.StoreConstants;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1Affinity;
+import io.kubernetes.client.models.V1NodeAffinity;
+import io.kubernetes.client.models.V1NodeSelectorRequirement;
+import io.kubernetes.client.models.V1NodeSelectorTerm;
+import io.kubernetes.client.models.V1PersistentVolume;
+import io.kubernetes.client.models.V1PersistentVolumeClaim;
+import io.kubernetes.client.models.V1PreferredSchedulingTerm;
+import io.kubernetes.client.models.V1Volume;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the placement of copy server pods. Pods are kept on the configured nodes and preferably run
+ * close to the target volume, on the nodes or in the zone the persistent volume behind its claim is bound to.
+ */
+public class CopySrvPlacement {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopySrvPlacement.class);
+    private static final List<String> ZONE_LABELS = Arrays.asList("topology.kubernetes.io/zone",
+            "failure-domain.beta.kubernetes.io/zone");
+    private static final int VOLUME_WEIGHT = 100;
+
+    private final CoreV1Api coreApi;
+    private final String namespace;
+    private final Map<String, String> nodeSelector;
+    // Bound volumes do not move, so their affinity is looked up once per claim
+    private final Map<String, Optional<V1Affinity>> affinities = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for this class
+     *
+     * @param apiClient The client used to access Kubernetes
+     * @param namespace The namespace of the copy servers and their volume claims
+     */
+    public CopySrvPlacement(final ApiClient apiClient, final String namespace) {
+        this.coreApi = new CoreV1Api(apiClient);
+        this.namespace = namespace;
+        this.nodeSelector = parseNodeSelector(StoreConstants.COPYSRV_NODE_SELECTOR);
+    }
+
+    /**
+     * Returns the node selector of the copy servers.
+     *
+     * @return the labels a node must carry, null if all nodes are eligible
+     */
+    public Map<String, String> getNodeSelector() {
+        return nodeSelector.isEmpty() ? null : nodeSelector;
+    }
+
+    /**
+     * Returns the preferred node affinity toward the nodes the target volume is bound to.
+     *
+     * @param volume The target volume of the copy servers
+     * @return the affinity, null if the location of the volume is unknown
+     */
+    public V1Affinity getAffinity(final V1Volume volume) {
+        if (!StoreConstants.COPYSRV_VOLUME_AFFINITY || volume == null || volume.getPersistentVolumeClaim() == null) {
+            return null;
+        }
+        final String claimName = volume.getPersistentVolumeClaim().getClaimName();
+        final Optional<V1Affinity> known = affinities.get(claimName);
+        if (known != null) {
+            return known.orElse(null);
+        }
+        try {
+            final V1PersistentVolumeClaim claim = coreApi.readNamespacedPersistentVolumeClaim(claimName, namespace,
+                    null, null, null);
+            final String volumeName = claim.getSpec() == null ? null : claim.getSpec().getVolumeName();
+            if (volumeName == null) {
+                // Not bound yet, it is placed together with its first consumer
+                return null;
+            }
+            final V1Affinity affinity = toAffinity(coreApi.readPersistentVolume(volumeName, null, null, null));
+            affinities.put(claimName, Optional.ofNullable(affinity));
+            return affinity;
+        } catch (ApiException e) {
+            LOGGER.warn("Could not look up the volume of claim " + claimName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static V1Affinity toAffinity(final V1PersistentVolume volume) {
+        final List<V1PreferredSchedulingTerm> preferred = new ArrayList<>();
+        if (volume.getSpec() != null && volume.getSpec().getNodeAffinity() != null
+                && volume.getSpec().getNodeAffinity().getRequired() != null) {
+            // Local volumes name their nodes
+            for (V1NodeSelectorTerm term : volume.getSpec().getNodeAffinity().getRequired().getNodeSelectorTerms()) {
+                preferred.add(new V1PreferredSchedulingTerm().weight(VOLUME_WEIGHT).preference(term));
+            }
+        } else if (volume.getMetadata() != null && volume.getMetadata().getLabels() != null) {
+            // Network volumes are labelled with their zone
+            final Map<String, String> labels = volume.getMetadata().getLabels();
+            for (String key : ZONE_LABELS) {
+                if (labels.containsKey(key)) {
+                    preferred.add(new V1PreferredSchedulingTerm().weight(VOLUME_WEIGHT)
+                            .preference(new V1NodeSelectorTerm().addMatchExpressionsItem(
+                                    new V1NodeSelectorRequirement().key(key).operator("In")
+                                            .values(Collections.singletonList(labels.get(key))))));
+                    break;
+                }
+            }
+        }
+        if (preferred.isEmpty()) {
+            return null;
+        }
+        return new V1Affinity().nodeAffinity(
+                new V1NodeAffinity().preferredDuringSchedulingIgnoredDuringExecution(preferred));
+    }
+
+    private static Map<String, String> parseNodeSelector(final String selector) {
+        final Map<String, String> labels = new HashMap<>();
+        for (String pair : selector.split(",")) {
+            final int separator = pair.indexOf('=');
+            if (separator > 0) {
+                labels.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+            } else if (!pair.trim().isEmpty()) {
+                LOGGER.warn("Ignoring invalid node selector " + pair);
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import de.gerdiproject.store.StoreConstants;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.models.V1ResourceRequirements;
+
+import java.math.BigDecimal;
+
+/**
+ * This class represents the sizing of copy server pods. A copy server holds one buffer per concurrent download, so
+ * requests and limits follow from the share of files and bytes each pod of a session copies.
+ */
+public final class CopySrvResources {
+
+    private CopySrvResources() {
+    }
+
+    /**
+     * Computes the requests and limits of the copy servers of a workload.
+     *
+     * @param files    The number of files of the workload, negative if unknown
+     * @param bytes    The total size of the files, negative if unknown
+     * @param replicas The number of copy servers sharing the workload
+     * @return the resource requirements of one copy server
+     */
+    public static V1ResourceRequirements forWorkload(final int files, final long bytes, final int replicas) {
+        final int pods = Math.max(1, replicas);
+        // A pod never downloads more files at once than it was assigned
+        final int streams = files < 0 ? StoreConstants.COPYSRV_STREAMS
+                : Math.max(1, Math.min(StoreConstants.COPYSRV_STREAMS, (files + pods - 1) / pods));
+        long buffers = streams * StoreConstants.COPYSRV_STREAM_BUFFER_BYTES;
+        if (bytes >= 0) {
+            // Buffers of small files are never filled
+            final long bytesPerPod = (bytes + pods - 1) / pods;
+            buffers = Math.min(buffers, Math.max(bytesPerPod, StoreConstants.COPYSRV_STREAM_BUFFER_BYTES));
+        }
+        final long memory = StoreConstants.COPYSRV_BASE_MEMORY_BYTES + buffers;
+        final long cpuMillis = streams * StoreConstants.COPYSRV_CPU_MILLIS_PER_STREAM;
+        final int factor = Math.max(1, StoreConstants.COPYSRV_LIMIT_FACTOR);
+
+        return new V1ResourceRequirements()
+                .putRequestsItem("memory", memory(memory))
+                .putRequestsItem("cpu", cpu(cpuMillis))
+                .putLimitsItem("memory", memory(memory * factor))
+                .putLimitsItem("cpu", cpu(cpuMillis * factor));
+    }
+
+    private static Quantity memory(final long bytes) {
+        return new Quantity(BigDecimal.valueOf(bytes), Quantity.Format.BINARY_SI);
+    }
+
+    private static Quantity cpu(final long millis) {
+        return new Quantity(BigDecimal.valueOf(millis, 3), Quantity.Format.DECIMAL_SI);
+    }
+}
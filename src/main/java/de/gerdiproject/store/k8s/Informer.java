@@ -0,0 +1,206 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.k8s;
+
+import com.squareup.okhttp.Call;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.util.Watch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * This class represents a minimal list-and-watch informer. It keeps a shared in-memory cache of the watched
+ * resources, so readers never have to call the Kubernetes API themselves, and notifies listeners on every change.
+ *
+ * @param <T> The type of the watched resource
+ * @param <L> The type of the list of watched resources
+ */
+public class Informer<T, L> implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Informer.class);
+
+    /**
+     * This interface represents a factory for list and watch calls of a resource type.
+     */
+    @FunctionalInterface
+    public interface CallFactory {
+        /**
+         * Creates a list or watch call.
+         *
+         * @param resourceVersion The resource version to start the watch at, null for list calls
+         * @param watch           true for watch calls, false for list calls
+         * @return The call
+         * @throws ApiException If the call could not be created
+         */
+        Call create(String resourceVersion, boolean watch) throws ApiException;
+    }
+
+    private final ApiClient apiClient;
+    private final CallFactory callFactory;
+    private final Type listType;
+    private final Type watchType;
+    private final Function<L, List<T>> items;
+    private final Function<L, String> listVersion;
+    private final Function<T, V1ObjectMeta> metadata;
+    private final Map<String, T> cache = new ConcurrentHashMap<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean synced = false;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor for this class
+     *
+     * @param apiClient   The client used for the calls, its read timeout must be disabled for watches
+     * @param callFactory The factory for list and watch calls
+     * @param listType    The type of the list returned by list calls
+     * @param watchType   The type of the responses returned by watch calls
+     * @param items       Returns the items of a list
+     * @param listVersion Returns the resource version of a list
+     * @param metadata    Returns the metadata of an item
+     */
+    public Informer(final ApiClient apiClient, final CallFactory callFactory, final Type listType,
+            final Type watchType, final Function<L, List<T>> items, final Function<L, String> listVersion,
+            final Function<T, V1ObjectMeta> metadata) {
+        this.apiClient = apiClient;
+        this.callFactory = callFactory;
+        this.listType = listType;
+        this.watchType = watchType;
+        this.items = items;
+        this.listVersion = listVersion;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Registers a listener which is executed after each change of the cache, on the informer's thread.
+     *
+     * @param listener The listener
+     */
+    public void addListener(final Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns a snapshot of all cached resources.
+     *
+     * @return The cached resources
+     */
+    public Collection<T> list() {
+        return new ArrayList<>(cache.values());
+    }
+
+    /**
+     * Returns a cached resource.
+     *
+     * @param name The name of the resource
+     * @return The resource or null if it does not exist
+     */
+    public T get(final String name) {
+        return cache.get(name);
+    }
+
+    /**
+     * Checks whether or not the cache was filled by an initial list.
+     *
+     * @return true if the cache is synchronized, false otherwise
+     */
+    public boolean hasSynced() {
+        return synced;
+    }
+
+    /**
+     * Stops this informer after the current watch ends.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                final String resourceVersion = relist();
+                watch(resourceVersion);
+            } catch (ApiException | IOException | RuntimeException e) {
+                LOGGER.warn("Informer interrupted, relisting: {}", e.toString());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private String relist() throws ApiException {
+        final L list = apiClient.<L>execute(callFactory.create(null, false), listType).getData();
+        final Map<String, T> fresh = new HashMap<>();
+        for (final T item : items.apply(list)) {
+            fresh.put(metadata.apply(item).getName(), item);
+        }
+        cache.keySet().retainAll(fresh.keySet());
+        cache.putAll(fresh);
+        synced = true;
+        notifyListeners();
+        return listVersion.apply(list);
+    }
+
+    private void watch(final String resourceVersion) throws ApiException, IOException {
+        try (Watch<T> watch = Watch.createWatch(apiClient, callFactory.create(resourceVersion, true), watchType)) {
+            for (final Watch.Response<T> event : watch) {
+                if (stopped) {
+                    return;
+                }
+                if (event.object == null) {
+                    // Typically an expired resource version, relist
+                    return;
+                }
+                final String name = metadata.apply(event.object).getName();
+                switch (event.type) {
+                    case "ADDED":
+                    case "MODIFIED":
+                        cache.put(name, event.object);
+                        break;
+                    case "DELETED":
+                        cache.remove(name);
+                        break;
+                    default:
+                        return;
+                }
+                notifyListeners();
+            }
+        }
+    }
+
+    private void notifyListeners() {
+        for (final Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.pac4j;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.pac4j.core.profile.CommonProfile;
+import org.pac4j.core.profile.ProfileManager;
+import org.pac4j.sparkjava.SparkWebContext;
+import spark.Request;
+import spark.Response;
+
+import java.util.Optional;
+
+/**
+ * This class represents the access to the user authenticated by the security filter of a request.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AuthenticatedUser {
+
+    /**
+     * Returns the name of the authenticated user, the preferred_username claim of its token.
+     *
+     * @param request  The request, which passed the security filter
+     * @param response The response
+     * @return The name, null if no user is authenticated
+     */
+    public static String getName(final Request request, final Response response) {
+        final Optional<CommonProfile> profile = new ProfileManager<CommonProfile>(
+                new SparkWebContext(request, response)).get(true);
+        if (!profile.isPresent()) {
+            return null;
+        }
+        final Object name = profile.get().getAttribute("preferred_username");
+        return name == null ? null : name.toString();
+    }
+}
@@ -47,6 +47,11 @@ public class GerdiConfigFactory implements ConfigFactory {
     private static final Logger LOGGER = LoggerFactory
             .getLogger(GerdiConfigFactory.class);
 
+    /**
+     * Number of signature keys loaded from the JWK endpoint by the last build
+     */
+    private volatile int loadedKeyCount = 0;
+
     @Override
     public Config build(final Object... parameters) {
         final JwtAuthenticator jwtAuthenticator = new JwtAuthenticator();
@@ -61,9 +66,15 @@ public class GerdiConfigFactory implements ConfigFactory {
         final JsonElement data = new JsonParser().parse(jwks);
         final JsonArray keys = data.getAsJsonObject().getAsJsonArray("keys");
 
+        int count = 0;
         for (JsonElement key : keys) {
             KeyPair pair = JWKHelper.buildRSAKeyPairFromJwk(key.getAsJsonObject().toString());
             jwtAuthenticator.addSignatureConfiguration(new RSASignatureConfiguration(pair));
+            count++;
+        }
+        this.loadedKeyCount = count;
+        if (count == 0) {
+            LOGGER.warn("No JWKs found at " + StoreConstants.OPENID_JWK_ENDPOINT);
         }
         final DirectBearerAuthClient bearerClient = new DirectBearerAuthClient(jwtAuthenticator);
 
@@ -74,6 +85,15 @@ public class GerdiConfigFactory implements ConfigFactory {
         return config;
     }
 
+    /**
+     * Returns the number of JWKs which were loaded by the last call of {@link #build(Object...)}.
+     *
+     * @return The number of loaded keys, 0 if no configuration was built yet
+     */
+    public int getLoadedKeyCount() {
+        return loadedKeyCount;
+    }
+
     /**
      * Reads a string from a given URL
      *
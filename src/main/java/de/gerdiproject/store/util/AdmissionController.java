@@ -0,0 +1,407 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gerdiproject.store.datamodel.Priority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents an admission controller for copy jobs. Requests of each user are rate limited by a token
+ * bucket. Copy jobs are admitted while the global number of copy server replicas, the global number of bytes in
+ * flight and the number of jobs which occupy an orchestration thread stay below their limits, otherwise they are
+ * queued by priority, in FIFO order within a priority, and started once capacity is released. Queued jobs may preempt
+ * running jobs of a lower priority.
+ */
+public class AdmissionController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final double userBurst;
+    private final double userRatePerSecond;
+    private final int maxReplicas;
+    private final long maxBytesInFlight;
+    private final boolean preemption;
+    private final int maxRunningJobs;
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> admitted = new LinkedHashMap<>();
+    private final Map<String, Reservation> waiting = new LinkedHashMap<>();
+    private int usedReplicas = 0;
+    private long usedBytes = 0;
+    private int runningJobs = 0;
+
+    /**
+     * Constructor for this class
+     *
+     * @param userBurst         The number of requests a user may send at once
+     * @param userRatePerSecond The number of requests per second a user may send on average
+     * @param maxReplicas       The maximum number of concurrent copy server replicas
+     * @param maxBytesInFlight  The maximum number of bytes copied concurrently
+     */
+    public AdmissionController(final double userBurst, final double userRatePerSecond, final int maxReplicas,
+            final long maxBytesInFlight) {
+        this(userBurst, userRatePerSecond, maxReplicas, maxBytesInFlight, false);
+    }
+
+    /**
+     * Constructor for this class
+     *
+     * @param userBurst         The number of requests a user may send at once
+     * @param userRatePerSecond The number of requests per second a user may send on average
+     * @param maxReplicas       The maximum number of concurrent copy server replicas
+     * @param maxBytesInFlight  The maximum number of bytes copied concurrently
+     * @param preemption        Whether queued jobs may preempt running jobs of a lower priority
+     */
+    public AdmissionController(final double userBurst, final double userRatePerSecond, final int maxReplicas,
+            final long maxBytesInFlight, final boolean preemption) {
+        this(userBurst, userRatePerSecond, maxReplicas, maxBytesInFlight, preemption, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for this class
+     *
+     * @param userBurst         The number of requests a user may send at once
+     * @param userRatePerSecond The number of requests per second a user may send on average
+     * @param maxReplicas       The maximum number of concurrent copy server replicas
+     * @param maxBytesInFlight  The maximum number of bytes copied concurrently
+     * @param preemption        Whether queued jobs may preempt running jobs of a lower priority
+     * @param maxRunningJobs    The maximum number of concurrent jobs which occupy an orchestration thread
+     */
+    public AdmissionController(final double userBurst, final double userRatePerSecond, final int maxReplicas,
+            final long maxBytesInFlight, final boolean preemption, final int maxRunningJobs) {
+        this.preemption = preemption;
+        this.maxRunningJobs = maxRunningJobs;
+        this.userBurst = userBurst;
+        this.userRatePerSecond = userRatePerSecond;
+        this.maxReplicas = maxReplicas;
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    /**
+     * Takes a token from the bucket of a user.
+     *
+     * @param userId The user
+     * @return 0 if the request is allowed, otherwise the time in milliseconds until the next request is allowed
+     */
+    public long tryAcquire(final String userId) {
+        final TokenBucket bucket = userBuckets.computeIfAbsent(userId,
+                key -> new TokenBucket(userBurst, userRatePerSecond));
+        return bucket.tryAcquire(1) ? 0 : Math.max(1, bucket.millisUntilAvailable(1));
+    }
+
+    /**
+     * Admits a copy job or queues it until enough capacity is available. A single job larger than the limits is
+     * admitted once nothing else is running.
+     *
+     * @param sessionId The session of the job
+     * @param replicas  The number of copy server replicas of the job
+     * @param bytes     The number of bytes of the job, 0 if unknown
+     * @param onAdmit   Started once the job is admitted, possibly on the calling thread
+     * @return 0 if the job was admitted right away, otherwise its position in the queue, starting at 1
+     */
+    public int admit(final String sessionId, final int replicas, final long bytes, final Runnable onAdmit) {
+        return admit(sessionId, Priority.NORMAL, replicas, bytes, onAdmit, null);
+    }
+
+    /**
+     * Admits a copy job which does not occupy an orchestration thread, see
+     * {@link #admit(String, Priority, int, long, boolean, Runnable, Runnable)}.
+     *
+     * @param sessionId The session of the job
+     * @param priority  The priority of the job
+     * @param replicas  The number of copy server replicas of the job
+     * @param bytes     The number of bytes of the job, 0 if unknown
+     * @param onAdmit   Started once the job is admitted, possibly on the calling thread
+     * @param onPreempt Called once the job should give up its capacity, null if the job can not be preempted
+     * @return 0 if the job was admitted right away, otherwise its position in the queue, starting at 1
+     */
+    public int admit(final String sessionId, final Priority priority, final int replicas, final long bytes,
+            final Runnable onAdmit, final Runnable onPreempt) {
+        return admit(sessionId, priority, replicas, bytes, false, onAdmit, onPreempt);
+    }
+
+    /**
+     * Admits a copy job or queues it behind all queued jobs of the same or a higher priority. If it does not fit,
+     * running jobs of a lower priority are preempted until enough capacity is freed. A preempted job keeps its
+     * capacity until it calls {@link #release(String)}, it is expected to checkpoint its work and to be admitted
+     * again.
+     *
+     * @param sessionId The session of the job
+     * @param priority  The priority of the job
+     * @param replicas  The number of copy server replicas of the job
+     * @param bytes     The number of bytes of the job, 0 if unknown
+     * @param blocking  Whether the job occupies an orchestration thread until it is released
+     * @param onAdmit   Started once the job is admitted, possibly on the calling thread
+     * @param onPreempt Called once the job should give up its capacity, null if the job can not be preempted
+     * @return 0 if the job was admitted right away, otherwise its position in the queue, starting at 1
+     */
+    public int admit(final String sessionId, final Priority priority, final int replicas, final long bytes,
+            final boolean blocking, final Runnable onAdmit, final Runnable onPreempt) {
+        final Reservation reservation = new Reservation(priority, replicas, bytes, blocking, onAdmit, onPreempt);
+        final List<Runnable> preempted;
+        synchronized (this) {
+            if (isQueuedAhead(priority) || !fits(reservation)) {
+                waiting.put(sessionId, reservation);
+                preempted = preemptFor(reservation);
+            } else {
+                reserve(sessionId, reservation);
+                preempted = null;
+            }
+        }
+        if (preempted == null) {
+            onAdmit.run();
+            return 0;
+        }
+        runAll(preempted, "Preempting a copy job failed.");
+        return getQueuePosition(sessionId);
+    }
+
+    /**
+     * Reserves additional replicas for an admitted job, as far as the limit allows.
+     *
+     * @param sessionId The session of the job
+     * @param replicas  The number of requested replicas
+     * @return The number of granted replicas
+     */
+    public synchronized int reserveReplicas(final String sessionId, final int replicas) {
+        final Reservation reservation = admitted.get(sessionId);
+        if (reservation == null || !waiting.isEmpty()) {
+            return 0;
+        }
+        final int granted = Math.max(0, Math.min(replicas, maxReplicas - usedReplicas));
+        reservation.replicas += granted;
+        usedReplicas += granted;
+        return granted;
+    }
+
+    /**
+     * Releases replicas of an admitted job, e.g. once a copy server finished its work.
+     *
+     * @param sessionId The session of the job
+     * @param replicas  The number of released replicas
+     */
+    public void releaseReplicas(final String sessionId, final int replicas) {
+        synchronized (this) {
+            final Reservation reservation = admitted.get(sessionId);
+            if (reservation == null) {
+                return;
+            }
+            final int released = Math.min(replicas, reservation.replicas);
+            reservation.replicas -= released;
+            usedReplicas -= released;
+        }
+        admitWaiting();
+    }
+
+    /**
+     * Removes a job from the queue, unless it was admitted already.
+     *
+     * @param sessionId The session of the job
+     * @return true if the job was queued and is removed, false if it is running or unknown
+     */
+    public synchronized boolean dequeue(final String sessionId) {
+        return waiting.remove(sessionId) != null;
+    }
+
+    /**
+     * Releases all capacity of a job, or removes it from the queue. Queued jobs are admitted if possible.
+     *
+     * @param sessionId The session of the job
+     */
+    public void release(final String sessionId) {
+        synchronized (this) {
+            waiting.remove(sessionId);
+            final Reservation reservation = admitted.remove(sessionId);
+            if (reservation != null) {
+                usedReplicas -= reservation.replicas;
+                usedBytes -= reservation.bytes;
+                runningJobs -= reservation.blocking ? 1 : 0;
+            }
+        }
+        admitWaiting();
+    }
+
+    /**
+     * Returns the position of a job in the queue.
+     *
+     * @param sessionId The session of the job
+     * @return The position starting at 1, or 0 if the job is not queued
+     */
+    public synchronized int getQueuePosition(final String sessionId) {
+        int position = 1;
+        for (final Map.Entry<String, Reservation> queued : orderedWaiting()) {
+            if (queued.getKey().equals(sessionId)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the token buckets of users which did not send requests for a while.
+     */
+    public void cleanUp() {
+        userBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    private void admitWaiting() {
+        final List<Runnable> started = new ArrayList<>();
+        final List<Runnable> preempted = new ArrayList<>();
+        synchronized (this) {
+            for (final Map.Entry<String, Reservation> head : orderedWaiting()) {
+                if (!fits(head.getValue())) {
+                    // later jobs must not overtake the head
+                    preempted.addAll(preemptFor(head.getValue()));
+                    break;
+                }
+                waiting.remove(head.getKey());
+                reserve(head.getKey(), head.getValue());
+                started.add(head.getValue().onAdmit);
+            }
+        }
+        runAll(preempted, "Preempting a copy job failed.");
+        runAll(started, "Starting an admitted copy job failed.");
+    }
+
+    /**
+     * Selects running jobs of a lower priority to make room for a queued job, lowest priority and newest first.
+     * Must be called while holding the lock.
+     *
+     * @return The preemption callbacks of the selected jobs
+     */
+    private List<Runnable> preemptFor(final Reservation queued) {
+        final List<Runnable> preempted = new ArrayList<>();
+        if (!preemption) {
+            return preempted;
+        }
+        final List<Reservation> candidates = new ArrayList<>(admitted.values());
+        Collections.reverse(candidates);
+        candidates.sort(Comparator.comparing(reservation -> reservation.priority));
+
+        int freedReplicas = 0;
+        long freedBytes = 0;
+        int freedJobs = 0;
+        for (final Reservation reservation : admitted.values()) {
+            if (reservation.preempted) {
+                // already giving up its capacity
+                freedReplicas += reservation.replicas;
+                freedBytes += reservation.bytes;
+                freedJobs += reservation.blocking ? 1 : 0;
+            }
+        }
+        for (final Reservation running : candidates) {
+            if (fitsAfter(queued, freedReplicas, freedBytes, freedJobs)) {
+                break;
+            }
+            if (running.preempted || running.onPreempt == null
+                    || running.priority.compareTo(queued.priority) >= 0) {
+                continue;
+            }
+            running.preempted = true;
+            freedReplicas += running.replicas;
+            freedBytes += running.bytes;
+            freedJobs += running.blocking ? 1 : 0;
+            preempted.add(running.onPreempt);
+        }
+        return preempted;
+    }
+
+    private boolean fitsAfter(final Reservation reservation, final int freedReplicas, final long freedBytes,
+            final int freedJobs) {
+        return usedReplicas - freedReplicas + reservation.replicas <= maxReplicas
+                && usedBytes - freedBytes + reservation.bytes <= maxBytesInFlight
+                && (!reservation.blocking || runningJobs - freedJobs < maxRunningJobs);
+    }
+
+    /**
+     * Returns the queued jobs ordered by priority, in FIFO order within a priority.
+     */
+    private List<Map.Entry<String, Reservation>> orderedWaiting() {
+        final List<Map.Entry<String, Reservation>> ordered = new ArrayList<>(waiting.entrySet());
+        // stable sort, so the insertion order is kept within a priority
+        ordered.sort(Comparator.comparing((Map.Entry<String, Reservation> entry) -> entry.getValue().priority)
+                .reversed());
+        return ordered;
+    }
+
+    private static void runAll(final List<Runnable> callbacks, final String error) {
+        for (final Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOGGER.error(error, e);
+            }
+        }
+    }
+
+    private boolean isQueuedAhead(final Priority priority) {
+        for (final Reservation queued : waiting.values()) {
+            if (queued.priority.compareTo(priority) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean fits(final Reservation reservation) {
+        if (admitted.isEmpty()) {
+            return true;
+        }
+        return usedReplicas + reservation.replicas <= maxReplicas
+                && usedBytes + reservation.bytes <= maxBytesInFlight
+                && (!reservation.blocking || runningJobs < maxRunningJobs);
+    }
+
+    private void reserve(final String sessionId, final Reservation reservation) {
+        admitted.put(sessionId, reservation);
+        usedReplicas += reservation.replicas;
+        usedBytes += reservation.bytes;
+        runningJobs += reservation.blocking ? 1 : 0;
+    }
+
+    /**
+     * The capacity reserved for a job
+     */
+    private static class Reservation {
+        private final Priority priority;
+        private int replicas;
+        private final long bytes;
+        private final boolean blocking;
+        private final Runnable onAdmit;
+        private final Runnable onPreempt;
+        private boolean preempted = false;
+
+        Reservation(final Priority priority, final int replicas, final long bytes, final boolean blocking,
+                final Runnable onAdmit, final Runnable onPreempt) {
+            this.priority = priority;
+            this.replicas = replicas;
+            this.bytes = bytes;
+            this.blocking = blocking;
+            this.onAdmit = onAdmit;
+            this.onPreempt = onPreempt;
+        }
+    }
+}
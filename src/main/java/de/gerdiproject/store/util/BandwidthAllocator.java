@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the bandwidth budget of all copy servers coordinated by the store service. The global budget
+ * is shared fairly between the users, the budget of a user between its sessions and the budget of a session between
+ * its copy servers, respecting the limits per user and per session. Budgets which are not used by capped users or
+ * sessions go to the others. The budget is redistributed whenever copy servers are registered or unregistered, the
+ * copy servers enforce their share with a token bucket.
+ */
+public class BandwidthAllocator {
+
+    /**
+     * The rate of copy servers without limit
+     */
+    public static final long UNLIMITED = 0;
+
+    private final long globalLimit;
+    private final long userLimit;
+    private final long sessionLimit;
+    private final Map<String, String[]> pods = new LinkedHashMap<>(); // pod IP -> session, user
+    private Map<String, Long> rates = Collections.emptyMap();
+    private Map<String, Long> sessionRates = Collections.emptyMap();
+
+    /**
+     * Constructor for this class
+     *
+     * @param globalLimit  The bytes per second of all copy servers, 0 for no limit
+     * @param userLimit    The bytes per second of the copy servers of a user, 0 for no limit
+     * @param sessionLimit The bytes per second of the copy servers of a session, 0 for no limit
+     */
+    public BandwidthAllocator(final long globalLimit, final long userLimit, final long sessionLimit) {
+        this.globalLimit = globalLimit;
+        this.userLimit = userLimit;
+        this.sessionLimit = sessionLimit;
+    }
+
+    /**
+     * Returns whether any limit is configured.
+     *
+     * @return true if copy servers are shaped
+     */
+    public boolean isEnabled() {
+        return globalLimit > 0 || userLimit > 0 || sessionLimit > 0;
+    }
+
+    /**
+     * Registers a copy server working for a session. A copy server works for one session at a time, registering it
+     * again moves it to the new session.
+     *
+     * @param podIP   The IP of the copy server
+     * @param session The session
+     * @param user    The user of the session
+     * @return the copy servers whose rate changed, with their new rate
+     */
+    public synchronized Map<String, Long> register(final String podIP, final String session, final String user) {
+        pods.put(podIP, new String[] {session, user});
+        return reallocate();
+    }
+
+    /**
+     * Unregisters a copy server which finished its work.
+     *
+     * @param podIP The IP of the copy server
+     * @return the copy servers whose rate changed, with their new rate
+     */
+    public synchronized Map<String, Long> unregister(final String podIP) {
+        if (pods.remove(podIP) == null) {
+            return Collections.emptyMap();
+        }
+        return reallocate();
+    }
+
+    /**
+     * Unregisters all copy servers of a session.
+     *
+     * @param session The session
+     * @return the copy servers whose rate changed, with their new rate
+     */
+    public synchronized Map<String, Long> unregisterSession(final String session) {
+        if (!pods.values().removeIf(owner -> owner[0].equals(session))) {
+            return Collections.emptyMap();
+        }
+        return reallocate();
+    }
+
+    /**
+     * Returns the rate of a copy server.
+     *
+     * @param podIP The IP of the copy server
+     * @return the bytes per second, {@link #UNLIMITED} if the copy server is not limited
+     */
+    public synchronized long getRate(final String podIP) {
+        return rates.getOrDefault(podIP, UNLIMITED);
+    }
+
+    /**
+     * Returns the rate of all copy servers of a session.
+     *
+     * @param session The session
+     * @return the bytes per second, {@link #UNLIMITED} if the session is not limited
+     */
+    public synchronized long getSessionRate(final String session) {
+        return sessionRates.getOrDefault(session, UNLIMITED);
+    }
+
+    private Map<String, Long> reallocate() {
+        // user -> session -> pod IPs
+        final Map<String, Map<String, List<String>>> tree = new LinkedHashMap<>();
+        for (Map.Entry<String, String[]> pod : pods.entrySet()) {
+            tree.computeIfAbsent(pod.getValue()[1], key -> new LinkedHashMap<>())
+                    .computeIfAbsent(pod.getValue()[0], key -> new ArrayList<>()).add(pod.getKey());
+        }
+
+        final List<String> users = new ArrayList<>(tree.keySet());
+        final long[] userCaps = new long[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            final long sessionsCap = sessionLimit > 0 ? multiply(sessionLimit, tree.get(users.get(i)).size())
+                    : Long.MAX_VALUE;
+            userCaps[i] = Math.min(userLimit > 0 ? userLimit : Long.MAX_VALUE, sessionsCap);
+        }
+        final long[] userRates = share(globalLimit > 0 ? globalLimit : Long.MAX_VALUE, userCaps);
+
+        final Map<String, Long> newRates = new HashMap<>();
+        final Map<String, Long> newSessionRates = new HashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            final Map<String, List<String>> sessions = tree.get(users.get(i));
+            final long[] sessionCaps = new long[sessions.size()];
+            Arrays.fill(sessionCaps, sessionLimit > 0 ? sessionLimit : Long.MAX_VALUE);
+            final long[] rateOfSessions = share(userRates[i], sessionCaps);
+            int j = 0;
+            for (Map.Entry<String, List<String>> session : sessions.entrySet()) {
+                final long sessionRate = rateOfSessions[j++];
+                newSessionRates.put(session.getKey(), toRate(sessionRate));
+                for (String podIP : session.getValue()) {
+                    newRates.put(podIP, toRate(sessionRate == Long.MAX_VALUE ? sessionRate
+                            : Math.max(1, sessionRate / session.getValue().size())));
+                }
+            }
+        }
+
+        final Map<String, Long> changed = new HashMap<>();
+        for (Map.Entry<String, Long> rate : newRates.entrySet()) {
+            if (!rate.getValue().equals(rates.get(rate.getKey()))) {
+                changed.put(rate.getKey(), rate.getValue());
+            }
+        }
+        rates = newRates;
+        sessionRates = newSessionRates;
+        return changed;
+    }
+
+    /**
+     * Shares a budget fairly between consumers with caps, what a capped consumer does not use goes to the others.
+     */
+    private static long[] share(final long budget, final long[] caps) {
+        final long[] result = new long[caps.length];
+        if (budget == Long.MAX_VALUE) {
+            System.arraycopy(caps, 0, result, 0, caps.length);
+            return result;
+        }
+        final Integer[] order = new Integer[caps.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(caps[a], caps[b]));
+        long remaining = budget;
+        for (int i = 0; i < order.length; i++) {
+            final long granted = Math.min(caps[order[i]], remaining / (order.length - i));
+            result[order[i]] = granted;
+            remaining -= granted;
+        }
+        return result;
+    }
+
+    private static long multiply(final long value, final int factor) {
+        return value > Long.MAX_VALUE / factor ? Long.MAX_VALUE : value * factor;
+    }
+
+    private static long toRate(final long bytesPerSecond) {
+        return bytesPerSecond == Long.MAX_VALUE ? UNLIMITED : bytesPerSecond;
+    }
+}
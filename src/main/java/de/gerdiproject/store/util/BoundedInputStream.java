@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class represents an {@linkplain InputStream} which fails as soon as more than a given number of bytes is read.
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count = 0;
+    private boolean limitExceeded = false;
+
+    /**
+     * Constructor for this class
+     *
+     * @param in    The stream to be wrapped
+     * @param limit The maximum number of bytes which may be read
+     */
+    public BoundedInputStream(final InputStream in, final long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int value = super.read();
+        if (value != -1) {
+            count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Checks whether or not the limit was exceeded while reading.
+     *
+     * @return true if more bytes than allowed were read, false otherwise
+     */
+    public boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    private void count(final long read) throws IOException {
+        this.count += read;
+        if (this.count > this.limit) {
+            this.limitExceeded = true;
+            throw new IOException("Payload exceeds the limit of " + limit + " bytes.");
+        }
+    }
+}
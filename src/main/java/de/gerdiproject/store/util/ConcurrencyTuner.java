@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the tuning of the number of parallel transfers of each copy server. The number is raised by
+ * one while the throughput of a copy server keeps up, and multiplied by the decrease factor when transfers fail or the
+ * throughput drops, which indicates a saturated source or target.
+ */
+public class ConcurrencyTuner {
+
+    private final int minStreams;
+    private final int maxStreams;
+    private final double decrease;
+    private final double dropTolerance;
+    private final Map<String, PodState> pods = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for this class
+     *
+     * @param minStreams    The minimum number of parallel transfers of a copy server
+     * @param maxStreams    The maximum number of parallel transfers of a copy server
+     * @param decrease      The factor applied on failures or a throughput drop, between 0 and 1
+     * @param dropTolerance The relative throughput loss which is still attributed to noise
+     */
+    public ConcurrencyTuner(final int minStreams, final int maxStreams, final double decrease,
+            final double dropTolerance) {
+        this.minStreams = Math.max(1, minStreams);
+        this.maxStreams = Math.max(this.minStreams, maxStreams);
+        this.decrease = decrease;
+        this.dropTolerance = dropTolerance;
+    }
+
+    /**
+     * Returns the number of parallel transfers a new copy server starts with.
+     *
+     * @return the initial number of parallel transfers
+     */
+    public int getInitialStreams() {
+        return Math.max(minStreams, maxStreams / 2);
+    }
+
+    /**
+     * Returns the minimum number of parallel transfers of a copy server.
+     *
+     * @return the minimum number of parallel transfers
+     */
+    public int getMinStreams() {
+        return minStreams;
+    }
+
+    /**
+     * Returns the maximum number of parallel transfers of a copy server.
+     *
+     * @return the maximum number of parallel transfers
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * Records the progress of a copy server and computes its next number of parallel transfers.
+     *
+     * @param podIP  The IP of the copy server
+     * @param bytes  The bytes the copy server transferred so far
+     * @param errors The number of failed transfers so far
+     * @param now    The time of the observation in milliseconds
+     * @return the new number of parallel transfers, or 0 if it stays unchanged
+     */
+    public int observe(final String podIP, final long bytes, final int errors, final long now) {
+        final PodState state = pods.computeIfAbsent(podIP, key -> new PodState(getInitialStreams(), bytes, errors, now));
+        synchronized (state) {
+            final long elapsed = now - state.observedAt;
+            if (elapsed <= 0) {
+                return 0;
+            }
+            final double throughput = (double) Math.max(0, bytes - state.bytes) / elapsed;
+            final boolean failed = errors > state.errors;
+            final boolean dropped = state.throughput > 0 && throughput < state.throughput * (1 - dropTolerance);
+            state.bytes = bytes;
+            state.errors = errors;
+            state.observedAt = now;
+            state.throughput = throughput;
+
+            final int next;
+            if (failed || dropped) {
+                next = Math.max(minStreams, (int) (state.streams * decrease));
+                // Fewer streams lower the throughput, the next sample is the new baseline instead of another drop
+                state.throughput = 0;
+            } else {
+                next = Math.min(maxStreams, state.streams + 1);
+            }
+            if (next == state.streams) {
+                return 0;
+            }
+            state.streams = next;
+            return next;
+        }
+    }
+
+    /**
+     * Forgets a copy server, for example once it is drained.
+     *
+     * @param podIP The IP of the copy server
+     */
+    public void forget(final String podIP) {
+        pods.remove(podIP);
+    }
+
+    private static final class PodState {
+        private int streams;
+        private long bytes;
+        private int errors;
+        private long observedAt;
+        private double throughput;
+
+        private PodState(final int streams, final long bytes, final int errors, final long observedAt) {
+            this.streams = streams;
+            this.bytes = bytes;
+            this.errors = errors;
+            this.observedAt = observedAt;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.security.MessageDigest;
+
+/**
+ * This class implements the CRC32C (Castagnoli) checksum as {@linkplain MessageDigest}, so it is computed like the
+ * other digests of a copy. The value is returned as four bytes in big-endian order.
+ */
+public class Crc32cDigest extends MessageDigest {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int value = i;
+            for (int bit = 0; bit < 8; bit++) {
+                value = (value & 1) != 0 ? (value >>> 1) ^ POLYNOMIAL : value >>> 1;
+            }
+            TABLE[i] = value;
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * Constructor for this class
+     */
+    public Crc32cDigest() {
+        super("CRC32C");
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 4;
+    }
+
+    @Override
+    protected void engineUpdate(final byte input) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ input) & 0xFF];
+    }
+
+    @Override
+    protected void engineUpdate(final byte[] input, final int offset, final int len) {
+        int value = crc;
+        for (int i = offset; i < offset + len; i++) {
+            value = (value >>> 8) ^ TABLE[(value ^ input[i]) & 0xFF];
+        }
+        crc = value;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        final int value = ~crc;
+        engineReset();
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    @Override
+    protected void engineReset() {
+        crc = 0xFFFFFFFF;
+    }
+}
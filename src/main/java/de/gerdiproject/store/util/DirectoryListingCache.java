@@ -0,0 +1,196 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.datamodel.ListElement;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * This class represents a bounded cache for directory listings, keyed by credentials and directory. Cached listings
+ * expire after a fixed time. If enabled, concurrent requests for the same listing share a single backend call.
+ *
+ * @param <E> The type used to store the credentials. Must implement the ICredentials interface.
+ */
+public class DirectoryListingCache<E extends ICredentials> {
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final boolean coalesce;
+    private final Map<Key<E>, Entry> entries;
+
+    /**
+     * Constructor for this class
+     *
+     * @param maxSize  The maximum number of cached listings
+     * @param ttl      The time a listing is cached, a zero duration disables the cache
+     * @param coalesce Whether or not concurrent requests for the same listing share one backend call
+     */
+    public DirectoryListingCache(final int maxSize, final Duration ttl, final boolean coalesce) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.coalesce = coalesce;
+        this.entries = new LruMap<>(maxSize);
+    }
+
+    /**
+     * Returns the cached listing of a directory or lists it using the given loader.
+     *
+     * @param creds     The credentials used for the listing
+     * @param directory The listed directory
+     * @param loader    The backend call listing the directory
+     * @return The listing of the directory
+     */
+    public List<ListElement> get(final E creds, final String directory, final Supplier<List<ListElement>> loader) {
+        if (ttl.isZero() || maxSize <= 0) {
+            return loader.get();
+        }
+        final Key<E> key = new Key<>(creds, normalize(directory));
+        final Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            final Entry cached = entries.get(key);
+            if (cached != null && (cached.isPending() && coalesce || cached.isValid())) {
+                entry = cached;
+            } else {
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                final List<ListElement> result = loader.get();
+                entry.complete(result, Instant.now().plus(ttl));
+                return result;
+            } catch (RuntimeException e) {
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.future.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return entry.await();
+    }
+
+    /**
+     * Removes the listings of a directory and all of its subdirectories.
+     *
+     * @param creds     The credentials used for the listings
+     * @param directory The changed directory
+     */
+    public void invalidate(final E creds, final String directory) {
+        final String prefix = normalize(directory);
+        synchronized (entries) {
+            final Iterator<Key<E>> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                final Key<E> key = keys.next();
+                if (key.getCredentials().equals(creds) && isSubdirectory(key.getDirectory(), prefix)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    private static boolean isSubdirectory(final String directory, final String parent) {
+        return directory.equals(parent) || "/".equals(parent)
+                || directory.startsWith(parent) && directory.charAt(parent.length()) == '/';
+    }
+
+    private static String normalize(final String directory) {
+        if (directory == null || directory.isEmpty()) {
+            return "/";
+        }
+        String result = directory.startsWith("/") ? directory : "/" + directory;
+        while (result.length() > 1 && result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * The key of a cached listing
+     */
+    private static @Data
+    class Key<E> {
+        private final E credentials;
+        private final String directory;
+    }
+
+    /**
+     * The cached listings in access order, the least recently used one is removed beyond the maximum size
+     */
+    private static class LruMap<K> extends LinkedHashMap<K, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LruMap(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, Entry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * A cached listing, which may still be loading
+     */
+    private static class Entry {
+        private final CompletableFuture<List<ListElement>> future = new CompletableFuture<>();
+        private volatile Instant expiry;
+
+        void complete(final List<ListElement> result, final Instant expiry) {
+            this.expiry = expiry;
+            future.complete(result);
+        }
+
+        boolean isPending() {
+            return !future.isDone();
+        }
+
+        boolean isValid() {
+            return !future.isCompletedExceptionally() && expiry != null && Instant.now().isBefore(expiry);
+        }
+
+        List<ListElement> await() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a directory listing.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the index of a download cache shared by all copy servers. Objects are keyed by their URL and
+ * the ETag or Last-Modified value of the source, and evicted in LRU order once their total size exceeds a limit.
+ * The objects themselves are stored by the copy servers, this index only decides whether a copy server links a
+ * cached object, waits for a concurrent download of the same object, or downloads and caches it.
+ */
+public class DownloadCache {
+
+    /**
+     * This depicts how a copy server obtains a file.
+     */
+    public enum Mode {
+        /**
+         * The object is cached, link it into the target directory. Download it if it is missing anyway.
+         */
+        HIT,
+        /**
+         * Another copy server downloads the object, wait for it and download it if it does not appear.
+         */
+        AWAIT,
+        /**
+         * Download the object into the cache and link it into the target directory.
+         */
+        FILL,
+        /**
+         * The object can not be cached, download it directly.
+         */
+        BYPASS;
+    }
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Map<String, String>> fills = new HashMap<>(); // session -> URL -> key
+    private final List<String> evicted = new ArrayList<>();
+    private long usedBytes = 0;
+
+    /**
+     * Constructor for this class
+     *
+     * @param maxBytes The maximum total size of the cached objects, 0 disables the cache
+     */
+    public DownloadCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the key of an object.
+     *
+     * @param url       The URL of the object
+     * @param validator The ETag or Last-Modified value of the object
+     * @return The key, usable as file name
+     */
+    public static String key(final String url, final String validator) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((url + '\n' + validator).getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Decides how a copy server of a session obtains a file. The first session requesting an uncached object fills
+     * the cache, concurrent sessions wait for it.
+     *
+     * @param sessionId The session requesting the file
+     * @param url       The URL of the file
+     * @param validator The ETag or Last-Modified value of the file, null if unknown
+     * @param size      The size of the file in bytes, -1 if unknown
+     * @return The mode, the key is available from {@link #key(String, String)}
+     */
+    public synchronized Mode lookup(final String sessionId, final String url, final String validator,
+            final long size) {
+        if (validator == null || size < 0 || size > maxBytes) {
+            // Without validator a changed source could not be detected
+            return Mode.BYPASS;
+        }
+        final String key = key(url, validator);
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.ready) {
+                return Mode.HIT;
+            }
+            return sessionId.equals(entry.filler) ? Mode.FILL : Mode.AWAIT;
+        }
+        entries.put(key, new Entry(sessionId, size));
+        usedBytes += size;
+        fills.computeIfAbsent(sessionId, id -> new HashMap<>()).put(url, key);
+        evict();
+        return Mode.FILL;
+    }
+
+    /**
+     * Marks the objects a session downloaded as cached.
+     *
+     * @param sessionId The session which filled the cache
+     * @param urls      The downloaded files
+     */
+    public synchronized void complete(final String sessionId, final List<String> urls) {
+        final Map<String, String> sessionFills = fills.get(sessionId);
+        if (sessionFills == null) {
+            return;
+        }
+        for (final String url : urls) {
+            final String key = sessionFills.remove(url);
+            final Entry entry = key == null ? null : entries.get(key);
+            if (entry != null) {
+                entry.ready = true;
+            }
+        }
+        if (sessionFills.isEmpty()) {
+            fills.remove(sessionId);
+        }
+        evict();
+    }
+
+    /**
+     * Drops the objects a finished, failed or killed session was still downloading. Objects reported as finished must
+     * be marked by {@link #complete(String, List)} before, all others are not known to be complete. Partial objects
+     * are deleted like evicted ones, the next session requesting them fills the cache again.
+     *
+     * @param sessionId The finished session
+     */
+    public synchronized void finish(final String sessionId) {
+        final Map<String, String> sessionFills = fills.remove(sessionId);
+        if (sessionFills == null) {
+            return;
+        }
+        for (final String key : sessionFills.values()) {
+            final Entry entry = entries.get(key);
+            if (entry != null && !entry.ready && sessionId.equals(entry.filler)) {
+                entries.remove(key);
+                usedBytes -= entry.size;
+                evicted.add(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys of the evicted objects which were not deleted yet, and forgets them.
+     *
+     * @return The keys of the objects to be deleted by a copy server
+     */
+    public synchronized List<String> drainEvicted() {
+        final List<String> drained = new ArrayList<>(evicted);
+        evicted.clear();
+        return drained;
+    }
+
+    /**
+     * Returns the total size of the cached and pending objects.
+     *
+     * @return The size in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void evict() {
+        // Pending objects are never evicted, the limit may be exceeded until they are finished
+        final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            final Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue().ready) {
+                it.remove();
+                usedBytes -= eldest.getValue().size;
+                evicted.add(eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * A cached or pending object
+     */
+    private static class Entry {
+        private final String filler;
+        private final long size;
+        private boolean ready = false;
+
+        Entry(final String filler, final long size) {
+            this.filler = filler;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.StoreConstants;
+import de.gerdiproject.store.datamodel.UrlMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the classification of files into bundles. Small files of the same host are grouped, so a
+ * copy server pipelines them over one connection, while large files and files of unknown size keep a dedicated
+ * stream. Sizes are taken from the metadata resolved when the documents were added.
+ */
+public final class FileBundler {
+
+    private FileBundler() {
+    }
+
+    /**
+     * Splits URLs into bundles, which are assigned to copy servers as a whole.
+     *
+     * @param urls The URLs
+     * @return The bundles, each holding either one file or small files of a single host
+     */
+    public static List<List<String>> bundle(final List<String> urls) {
+        final List<List<String>> bundles = new ArrayList<>();
+        final Map<String, List<String>> open = new LinkedHashMap<>();
+        final Map<String, Long> openBytes = new LinkedHashMap<>();
+        for (String url : urls) {
+            final long size = sizeOf(url);
+            if (size < 0 || size > StoreConstants.SMALL_FILE_MAX_BYTES) {
+                bundles.add(Collections.singletonList(url));
+                continue;
+            }
+            final String host = HostLimiter.hostOf(url);
+            List<String> bundle = open.get(host);
+            if (bundle != null && (bundle.size() >= StoreConstants.SMALL_FILE_BATCH_FILES
+                    || openBytes.get(host) + size > StoreConstants.SMALL_FILE_BATCH_BYTES)) {
+                bundle = null;
+            }
+            if (bundle == null) {
+                bundle = new ArrayList<>();
+                bundles.add(bundle);
+                open.put(host, bundle);
+                openBytes.put(host, 0L);
+            }
+            bundle.add(url);
+            openBytes.merge(host, size, Long::sum);
+        }
+        return bundles;
+    }
+
+    /**
+     * Returns the bundles of URLs which hold more than one file.
+     *
+     * @param urls The URLs
+     * @return The bundles of small files
+     */
+    public static List<List<String>> batches(final List<String> urls) {
+        final List<List<String>> batches = new ArrayList<>();
+        for (List<String> bundle : bundle(urls)) {
+            if (bundle.size() > 1) {
+                batches.add(bundle);
+            }
+        }
+        return batches;
+    }
+
+    private static long sizeOf(final String url) {
+        if (StoreConstants.SMALL_FILE_MAX_BYTES <= 0) {
+            return -1;
+        }
+        final UrlMetadata metadata = UrlMetadataResolver.getDefault().peek(url);
+        return metadata == null ? -1 : metadata.getSize();
+    }
+}
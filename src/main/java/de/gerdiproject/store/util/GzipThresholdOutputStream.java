@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class represents an {@linkplain OutputStream} writing to a servlet response, which switches to gzip compression
+ * once more than a given number of bytes was written. Small responses are sent uncompressed.
+ */
+public class GzipThresholdOutputStream extends OutputStream {
+
+    private final HttpServletResponse response;
+    private final int threshold;
+    private final ByteArrayOutputStream buffer;
+    private OutputStream out;
+    private boolean finished = false;
+
+    /**
+     * Constructor for this class
+     *
+     * @param response  The response to write to
+     * @param threshold The number of bytes which are buffered before compression is enabled
+     */
+    public GzipThresholdOutputStream(final HttpServletResponse response, final int threshold) {
+        super();
+        this.response = response;
+        this.threshold = threshold;
+        this.buffer = new ByteArrayOutputStream(Math.min(threshold, 8192));
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (out == null && buffer.size() + 1 > threshold) {
+            switchToGzip();
+        }
+        if (out == null) {
+            buffer.write(b);
+        } else {
+            out.write(b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (out == null && buffer.size() + len > threshold) {
+            switchToGzip();
+        }
+        if (out == null) {
+            buffer.write(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Writes all pending data and commits the response. The underlying servlet stream is not closed.
+     *
+     * @throws IOException If the response could not be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (out == null) {
+            response.setContentLength(buffer.size());
+            buffer.writeTo(response.getOutputStream());
+        } else {
+            ((GZIPOutputStream) out).finish();
+        }
+        response.getOutputStream().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void switchToGzip() throws IOException {
+        response.setHeader("Content-Encoding", "gzip");
+        response.addHeader("Vary", "Accept-Encoding");
+        this.out = new GZIPOutputStream(response.getOutputStream(), 8192);
+        buffer.writeTo(out);
+        buffer.reset();
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents the connection limits of the source hosts, shared by all copy servers. Each copy server
+ * holding files of a host counts as one connection to it. The limit of a host is halved whenever the host throttles
+ * a copy server, which also blocks the host for a backoff time, and raised by one for each batch finished without
+ * throttling, up to the configured maximum.
+ */
+public class HostLimiter {
+
+    private final int maxConnections;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    /**
+     * Constructor for this class
+     *
+     * @param maxConnections   The maximum number of concurrent connections to a single host
+     * @param minBackoffMillis The backoff after the first throttling
+     * @param maxBackoffMillis The maximum backoff after repeated throttling
+     */
+    public HostLimiter(final int maxConnections, final long minBackoffMillis, final long maxBackoffMillis) {
+        this.maxConnections = maxConnections;
+        this.minBackoffMillis = minBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Returns the host of a URL.
+     *
+     * @param url The URL
+     * @return The host in lower case, an empty string for invalid URLs
+     */
+    public static String hostOf(final String url) {
+        try {
+            return new URL(url).getHost().toLowerCase();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Returns the hosts of some URLs.
+     *
+     * @param urls The URLs
+     * @return The distinct hosts
+     */
+    public static Set<String> hostsOf(final Collection<String> urls) {
+        final Set<String> result = new LinkedHashSet<>();
+        for (final String url : urls) {
+            result.add(hostOf(url));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of further connections a host currently allows.
+     *
+     * @param host The host
+     * @return The number of free connections, 0 while the host is backed off
+     */
+    public synchronized int available(final String host) {
+        final HostState state = state(host);
+        if (System.currentTimeMillis() < state.blockedUntil) {
+            return 0;
+        }
+        return Math.max(0, state.limit - state.inUse);
+    }
+
+    /**
+     * Takes a connection to each of the given hosts, or none if at least one host has no free connection.
+     *
+     * @param hostNames The hosts
+     * @return true if the connections were taken, false otherwise
+     */
+    public synchronized boolean tryAcquire(final Collection<String> hostNames) {
+        for (final String host : hostNames) {
+            if (available(host) == 0) {
+                return false;
+            }
+        }
+        for (final String host : hostNames) {
+            state(host).inUse++;
+        }
+        return true;
+    }
+
+    /**
+     * Takes a connection to a host regardless of its limit, after checking {@link #available(String)}.
+     *
+     * @param host The host
+     */
+    public synchronized void acquire(final String host) {
+        state(host).inUse++;
+    }
+
+    /**
+     * Returns the connections to the given hosts.
+     *
+     * @param hostNames The hosts
+     * @param succeeded Whether or not the work finished, which raises the limits of hosts which did not throttle
+     */
+    public synchronized void release(final Collection<String> hostNames, final boolean succeeded) {
+        final long now = System.currentTimeMillis();
+        for (final String host : hostNames) {
+            final HostState state = state(host);
+            state.inUse = Math.max(0, state.inUse - 1);
+            if (succeeded && now >= state.blockedUntil) {
+                state.limit = Math.min(maxConnections, state.limit + 1);
+                state.backoff = 0;
+            }
+            if (state.inUse == 0 && state.limit == maxConnections && now >= state.blockedUntil) {
+                hosts.remove(host);
+            }
+        }
+    }
+
+    /**
+     * Records that a host throttled a copy server, e.g. with 429 or 503.
+     *
+     * @param host             The host
+     * @param retryAfterMillis The time the host asked to wait, 0 if unknown
+     */
+    public synchronized void throttled(final String host, final long retryAfterMillis) {
+        final HostState state = state(host);
+        final long now = System.currentTimeMillis();
+        if (now < state.blockedUntil) {
+            // Reports of copy servers which were throttled at the same time
+            return;
+        }
+        state.limit = Math.max(1, state.limit / 2);
+        state.backoff = state.backoff == 0 ? minBackoffMillis : Math.min(maxBackoffMillis, state.backoff * 2);
+        state.blockedUntil = now + Math.max(state.backoff, retryAfterMillis);
+    }
+
+    /**
+     * Returns the current limits of the given hosts.
+     *
+     * @param hostNames The hosts
+     * @return The number of connections allowed per host
+     */
+    public synchronized Map<String, Integer> limits(final Collection<String> hostNames) {
+        final Map<String, Integer> result = new HashMap<>();
+        for (final String host : hostNames) {
+            result.put(host, state(host).limit);
+        }
+        return result;
+    }
+
+    private HostState state(final String host) {
+        return hosts.computeIfAbsent(host, key -> new HostState(maxConnections));
+    }
+
+    /**
+     * The limit and usage of a host
+     */
+    private static class HostState {
+        private int limit;
+        private int inUse = 0;
+        private long backoff = 0;
+        private long blockedUntil = 0;
+
+        HostState(final int limit) {
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import de.gerdiproject.store.StoreConstants;
+import de.gerdiproject.store.datamodel.ListElement;
+import de.gerdiproject.store.datamodel.ResearchDataInputStream;
+import de.gerdiproject.store.datamodel.StoreTask;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class provides the shared, thread-safe {@linkplain Gson} instance used by all routes and writes JSON responses
+ * directly to the servlet output stream. Responses are gzip compressed if they are large and the client accepts it.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class JsonResponseWriter {
+
+    /**
+     * The shared Gson instance with all adapters of this library registered
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ListElement.class, new ListElementSerializer())
+            .registerTypeAdapter(StoreTask.class, new StoreTaskDeserializer(StoreConstants.MAX_DOCUMENTS))
+            .registerTypeAdapter(ResearchDataInputStream.class, new ResearchDataInputStreamSerializer())
+            .create();
+
+    /**
+     * Serializes the given object into the response body. The response is committed afterwards, so the route must
+     * return an empty string.
+     *
+     * @param request  The request, used to negotiate the encoding
+     * @param response The response to write to
+     * @param src      The object to be serialized
+     * @param type     The type of the object to be serialized
+     * @throws IOException If the response could not be written
+     */
+    public static void write(final Request request, final Response response, final Object src, final Type type)
+            throws IOException {
+        try (JsonWriter writer = open(request, response)) {
+            GSON.toJson(src, type, writer);
+        }
+    }
+
+    /**
+     * Opens a {@linkplain JsonWriter} on the response body for routes which stream their output. Closing the writer
+     * commits the response, but leaves the servlet stream open.
+     *
+     * @param request  The request, used to negotiate the encoding
+     * @param response The response to write to
+     * @return A writer on the response body
+     * @throws IOException If the response could not be opened
+     */
+    public static JsonWriter open(final Request request, final Response response) throws IOException {
+        final HttpServletResponse raw = response.raw();
+        raw.setContentType("application/json; charset=utf-8");
+        final OutputStream out;
+        if (acceptsGzip(request)) {
+            out = new GzipThresholdOutputStream(raw, StoreConstants.GZIP_MIN_BYTES);
+        } else {
+            out = new UncloseableOutputStream(new BufferedOutputStream(raw.getOutputStream()));
+        }
+        return GSON.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    private static boolean acceptsGzip(final Request request) {
+        final String accepted = request.headers("Accept-Encoding");
+        return accepted != null && accepted.contains("gzip");
+    }
+
+    /**
+     * Flushes instead of closing, so the servlet container keeps control over the connection.
+     */
+    private static class UncloseableOutputStream extends FilterOutputStream {
+
+        UncloseableOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
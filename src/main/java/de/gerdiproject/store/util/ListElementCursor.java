@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.datamodel.IListCursor;
+import de.gerdiproject.store.datamodel.ListElement;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a cursor over an already materialized list of elements. The page token is the offset of the
+ * next element.
+ */
+public class ListElementCursor implements IListCursor {
+
+    private final List<ListElement> elements;
+    private int position;
+
+    /**
+     * Constructor for this class
+     *
+     * @param elements  The listed elements
+     * @param pageToken A token returned by a previous cursor over the same list, may be null to start at the beginning
+     * @throws IllegalArgumentException If the page token is not valid
+     */
+    public ListElementCursor(final List<ListElement> elements, final String pageToken) {
+        this.elements = elements;
+        if (pageToken == null || pageToken.isEmpty()) {
+            this.position = 0;
+        } else {
+            try {
+                this.position = Integer.parseInt(pageToken);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token: " + pageToken, e);
+            }
+            if (this.position < 0) {
+                throw new IllegalArgumentException("Invalid page token: " + pageToken);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < elements.size();
+    }
+
+    @Override
+    public ListElement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return elements.get(position++);
+    }
+
+    @Override
+    public String getNextPageToken() {
+        return hasNext() ? Integer.toString(position) : null;
+    }
+
+    @Override
+    public void close() { // NOPMD nothing to release
+    }
+}
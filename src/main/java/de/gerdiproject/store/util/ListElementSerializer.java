@@ -0,0 +1,73 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import de.gerdiproject.store.datamodel.ListElement;
+
+import java.io.IOException;
+
+/**
+ * This class represents a streaming serializer for the {@linkplain ListElement}.
+ */
+public class ListElementSerializer extends TypeAdapter<ListElement> {
+
+    @Override
+    public void write(final JsonWriter out, final ListElement value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("displayName").value(value.getDisplayName());
+        out.name("type").value(value.getType());
+        out.name("uri").value(value.getUri());
+        out.endObject();
+    }
+
+    @Override
+    public ListElement read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String displayName = null;
+        String type = null;
+        String uri = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "displayName":
+                    displayName = in.nextString();
+                    break;
+                case "type":
+                    type = in.nextString();
+                    break;
+                case "uri":
+                    uri = in.nextString();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return ListElement.of(displayName, type, uri);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.datamodel.IMultipartUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class represents the upload of streams in parts to an object store. Parts are read into a bounded pool of
+ * buffers and uploaded in parallel, reading blocks while all buffers are in flight. Failed parts are retried with
+ * exponential backoff, the upload is committed once all parts succeeded and aborted otherwise.
+ */
+public class MultipartUploader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultipartUploader.class);
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ExecutorService executor;
+    private final int partSize;
+    private final int buffers;
+    private final int retries;
+    private final long retryMillis;
+
+    /**
+     * Constructor for this class
+     *
+     * @param threads     The number of parts uploaded in parallel, shared by all uploads
+     * @param partSize    The preferred size of a part, raised to the limits of the object store
+     * @param buffers     The number of part buffers of a single upload
+     * @param retries     The number of retries of a failed part
+     * @param retryMillis The backoff before the first retry
+     */
+    public MultipartUploader(final int threads, final int partSize, final int buffers, final int retries,
+            final long retryMillis) {
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "multipart-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.partSize = partSize;
+        this.buffers = Math.max(1, buffers);
+        this.retries = retries;
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * Uploads a stream. Blocks until the upload is committed or failed.
+     *
+     * @param target     The object store
+     * @param creds      The stored credentials of the user
+     * @param targetPath The path of the object to be written
+     * @param input      The stream, read by the calling thread
+     * @param size       The size of the stream, -1 if unknown
+     * @param <E>        The type of the credentials
+     * @throws IOException If the stream could not be read or the upload failed
+     */
+    public <E extends ICredentials> void upload(final IMultipartUpload<E> target, final E creds,
+            final String targetPath, final InputStream input, final long size) throws IOException {
+        final int bufferSize = partSizeOf(target, size);
+        final String uploadId = target.initiate(creds, targetPath);
+        final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(buffers);
+        final List<Future<String>> parts = new ArrayList<>();
+        int allocated = 0;
+        try {
+            while (true) {
+                byte[] buffer = pool.poll();
+                if (buffer == null && allocated < buffers) {
+                    buffer = new byte[bufferSize];
+                    allocated++;
+                } else if (buffer == null) {
+                    buffer = pool.take();
+                }
+                final int length = readFully(input, buffer);
+                if (length == 0 && !parts.isEmpty()) {
+                    pool.offer(buffer);
+                    break;
+                }
+                if (parts.size() >= target.getMaxParts()) {
+                    throw new IOException("The stream exceeds " + target.getMaxParts() + " parts.");
+                }
+                final int partNumber = parts.size() + 1;
+                final byte[] part = buffer;
+                parts.add(executor.submit(() -> {
+                    try {
+                        return uploadPart(target, creds, uploadId, partNumber, part, length);
+                    } finally {
+                        pool.offer(part);
+                    }
+                }));
+                if (length < bufferSize) {
+                    break;
+                }
+            }
+            final List<String> tags = new ArrayList<>(parts.size());
+            for (Future<String> part : parts) {
+                tags.add(part.get());
+            }
+            target.complete(creds, uploadId, tags);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(target, creds, uploadId, parts);
+            throw new IOException("Interrupted while uploading " + targetPath, e);
+        } catch (ExecutionException e) {
+            abort(target, creds, uploadId, parts);
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abort(target, creds, uploadId, parts);
+            throw e;
+        }
+    }
+
+    private <E extends ICredentials> String uploadPart(final IMultipartUpload<E> target, final E creds,
+            final String uploadId, final int partNumber, final byte[] data, final int length) throws IOException,
+            InterruptedException {
+        long backoff = retryMillis;
+        for (int attempt = 0;; attempt++) {
+            try {
+                return target.uploadPart(creds, uploadId, partNumber, data, length);
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                LOGGER.debug("Retrying part {} of upload {}: {}", partNumber, uploadId, e.toString());
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private <E extends ICredentials> void abort(final IMultipartUpload<E> target, final E creds,
+            final String uploadId, final List<Future<String>> parts) {
+        for (Future<String> part : parts) {
+            part.cancel(true);
+        }
+        try {
+            target.abort(creds, uploadId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not abort upload " + uploadId, e);
+        }
+    }
+
+    private int partSizeOf(final IMultipartUpload<?> target, final long size) {
+        long result = Math.max(partSize, target.getMinPartSize());
+        if (size > 0) {
+            // Large objects need larger parts to stay within the part limit
+            result = Math.max(result, (size + target.getMaxParts() - 1) / target.getMaxParts());
+        }
+        return (int) Math.min(result, MAX_BUFFER_SIZE);
+    }
+
+    private static int readFully(final InputStream input, final byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            final int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
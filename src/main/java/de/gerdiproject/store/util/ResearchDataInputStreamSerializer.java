@@ -16,6 +16,7 @@
 package de.gerdiproject.store.util;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
@@ -24,14 +25,19 @@ import de.gerdiproject.store.datamodel.ResearchDataInputStream;
 import java.lang.reflect.Type;
 
 /**
- * This class represents a serializer for the {@linkplain ResearchDataInputStream}.
+ * This class represents a serializer for the {@linkplain ResearchDataInputStream}. It is registered for
+ * serialization only, since a stream can not be restored from its JSON representation.
  *
  * @author Nelson Tavares de Sousa
  */
 public class ResearchDataInputStreamSerializer implements JsonSerializer<ResearchDataInputStream> {
 
     @Override
-    public JsonElement serialize(final ResearchDataInputStream src, final Type typeOfSrc, final JsonSerializationContext context) {
+    public JsonElement serialize(final ResearchDataInputStream src, final Type typeOfSrc,
+            final JsonSerializationContext context) {
+        if (src == null) {
+            return JsonNull.INSTANCE;
+        }
         final JsonObject obj = new JsonObject();
         obj.addProperty("fileName", src.getName());
         obj.addProperty("progressInPercent", src.getProgressInPercent());
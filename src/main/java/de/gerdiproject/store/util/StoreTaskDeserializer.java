@@ -15,53 +15,166 @@
  */
 package de.gerdiproject.store.util;
 
-import com.google.gson.*;
-import de.gerdiproject.store.datamodel.ResearchDataInputStream;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import de.gerdiproject.store.datamodel.Priority;
+import de.gerdiproject.store.datamodel.SessionState;
 import de.gerdiproject.store.datamodel.StoreTask;
+import de.gerdiproject.store.datamodel.TaskDocuments;
+import de.gerdiproject.store.datamodel.UrlMetadata;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
- * This class represents a deserializer for incoming requests which are represented by {@linkplain StoreTask}
+ * This class represents a streaming deserializer for incoming requests which are represented by {@linkplain StoreTask}.
+ * Fields are validated while they are read, so invalid requests are rejected without buffering the whole payload.
  *
  * @author Nelson Tavares de Sousa
  */
-public class StoreTaskDeserializer implements JsonDeserializer<StoreTask> {
+public class StoreTaskDeserializer extends TypeAdapter<StoreTask> {
+
+    private final int maxDocuments;
+
+    /**
+     * Constructor for this class
+     *
+     * @param maxDocuments The maximum number of documents accepted in a single request
+     */
+    public StoreTaskDeserializer(final int maxDocuments) {
+        super();
+        this.maxDocuments = maxDocuments;
+    }
 
     @Override
-    public StoreTask deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context) throws JsonParseException {
-        final JsonObject jsonObject = json.getAsJsonObject();
+    public StoreTask read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
         final StoreTask instance = new StoreTask();
-        JsonElement userId = jsonObject.get("userId");
-        if (userId == null) {
-            throw new JsonParseException("userId must not be null.");
+        boolean hasDocs = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = in.nextName();
+            switch (name) {
+                case "userId":
+                    instance.setUserId(readString(in, name, false));
+                    break;
+                case "bookmarkId":
+                    instance.setBookmarkId(readString(in, name, false));
+                    break;
+                case "bookmarkName":
+                    instance.setBookmarkName(readString(in, name, true));
+                    break;
+                case "priority":
+                    instance.setPriority(readPriority(in));
+                    break;
+                case "docs":
+                    readDocs(in, instance);
+                    hasDocs = true;
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
         }
-        instance.setUserId(userId.getAsString());
+        in.endObject();
 
-        JsonElement bookmarkId = jsonObject.get("bookmarkId");
-        if (bookmarkId == null) {
+        if (instance.getUserId() == null) {
+            throw new JsonParseException("userId must not be null.");
+        }
+        if (instance.getBookmarkId() == null) {
             throw new JsonParseException("bookmarkId must not be null.");
         }
-        instance.setBookmarkId(bookmarkId.getAsString());
-
-        JsonElement bookmarkName = jsonObject.get("bookmarkName");
-        if (bookmarkName == null) {
+        if (instance.getBookmarkName() == null) {
             throw new JsonParseException("bookmarkName must not be null.");
         }
-        instance.setBookmarkName(bookmarkName.getAsString());
+        if (!hasDocs) {
+            throw new JsonParseException("docs must not be null.");
+        }
+        return instance;
+    }
+
+    @Override
+    public void write(final JsonWriter out, final StoreTask value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("userId").value(value.getUserId());
+        out.name("bookmarkId").value(value.getBookmarkId());
+        out.name("bookmarkName").value(value.getBookmarkName());
+        if (value.getPriority() != null) {
+            out.name("priority").value(value.getPriority().name().toLowerCase(Locale.ROOT));
+        }
+        out.name("docs").beginArray();
+        final TaskDocuments documents = value.getDocuments();
+        for (int i = 0; i < documents.size(); i++) {
+            out.value(documents.getUrl(i));
+        }
+        out.endArray();
+        out.endObject();
+    }
 
-        final JsonArray docs = jsonObject.get("docs").getAsJsonArray();
-        for (JsonElement elem : docs) {
+    private void readDocs(final JsonReader in, final StoreTask instance) throws IOException {
+        if (!instance.transition(SessionState.CREATED, SessionState.RESOLVING)) {
+            throw new JsonParseException("docs must only be given once.");
+        }
+        in.beginArray();
+        final List<URL> urls = new ArrayList<>();
+        while (in.hasNext()) {
+            if (urls.size() >= maxDocuments) {
+                throw new JsonParseException("docs must not contain more than " + maxDocuments + " elements.");
+            }
+            final String url = readString(in, "docs", false);
             try {
-                final ResearchDataInputStream in = new ResearchDataInputStream(new URL(elem.getAsString()));
-                instance.addResearchDataInputStream(in);
-            } catch (IOException e) {
-                throw new JsonParseException("At least one element in docs is not a valid URL");
+                urls.add(new URL(url));
+            } catch (MalformedURLException e) {
+                throw new JsonParseException("At least one element in docs is not a valid URL", e);
+            }
+        }
+        in.endArray();
+        // All URLs are resolved concurrently once the list is complete
+        try {
+            final List<UrlMetadata> metadata = UrlMetadataResolver.getDefault().resolveAll(urls);
+            for (int i = 0; i < urls.size(); i++) {
+                instance.getDocuments().add(urls.get(i), metadata.get(i));
             }
+            instance.transition(SessionState.RESOLVING, SessionState.READY);
+        } catch (IOException e) {
+            throw new JsonParseException("At least one element in docs is not a valid URL", e);
         }
+    }
 
-        return instance;
+    private static Priority readPriority(final JsonReader in) throws IOException {
+        final String value = readString(in, "priority", false);
+        try {
+            return Priority.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("priority must be one of low, normal or high.", e);
+        }
+    }
+
+    private static String readString(final JsonReader in, final String name, final boolean allowEmpty)
+            throws IOException {
+        final JsonToken token = in.peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new JsonParseException(name + " must be a string.");
+        }
+        final String value = in.nextString();
+        if (!allowEmpty && value.isEmpty()) {
+            throw new JsonParseException(name + " must not be empty.");
+        }
+        return value;
     }
 }
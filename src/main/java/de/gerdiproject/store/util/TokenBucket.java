@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+/**
+ * This class represents a token bucket, which allows bursts of up to its capacity and refills at a constant rate.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructor for this class
+     *
+     * @param capacity        The maximum number of tokens, the bucket is full initially
+     * @param refillPerSecond The number of tokens added per second
+     */
+    public TokenBucket(final double capacity, final double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes tokens from the bucket, if enough are available.
+     *
+     * @param amount The number of tokens
+     * @return true if the tokens were taken, false otherwise
+     */
+    public synchronized boolean tryAcquire(final double amount) {
+        refill();
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * Returns the time until the given number of tokens is available.
+     *
+     * @param amount The number of tokens
+     * @return The time in milliseconds, 0 if the tokens are available
+     */
+    public synchronized long millisUntilAvailable(final double amount) {
+        refill();
+        if (tokens >= amount) {
+            return 0;
+        }
+        return (long) Math.ceil((amount - tokens) / refillPerNano / 1e6);
+    }
+
+    /**
+     * Checks whether or not the bucket is full, i.e. unused.
+     *
+     * @return true if the bucket is full, false otherwise
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.StoreConstants;
+import de.gerdiproject.store.datamodel.ChecksumAlgorithm;
+import de.gerdiproject.store.datamodel.UrlMetadata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class represents a resolver for the metadata of research data URLs. Metadata is requested with HEAD, cached
+ * for a fixed time and revalidated with conditional requests afterwards. Many URLs are resolved concurrently, with
+ * a limited number of connections per host. Requests beyond that limit wait in a queue of their host instead of
+ * occupying a thread, so a single host can not starve the others. Concurrent requests for the same URL share a
+ * single request.
+ */
+public class UrlMetadataResolver {
+
+    private static final UrlMetadataResolver DEFAULT = new UrlMetadataResolver(
+            StoreConstants.URL_METADATA_CACHE_SIZE, StoreConstants.URL_METADATA_TTL_SECONDS * 1000,
+            StoreConstants.URL_METADATA_HOST_CONNECTIONS, StoreConstants.URL_METADATA_THREADS,
+            StoreConstants.URL_METADATA_TIMEOUT_MILLIS);
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final int hostConnections;
+    private final int timeoutMillis;
+    private final Map<String, CompletableFuture<UrlMetadata>> entries;
+    private final Map<String, HostQueue> hostQueues = new HashMap<>();
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for this class
+     *
+     * @param maxSize         The maximum number of cached URLs
+     * @param ttlMillis       The time after which cached metadata is revalidated
+     * @param hostConnections The maximum number of concurrent connections to a single host
+     * @param threads         The maximum number of concurrent connections
+     * @param timeoutMillis   The connect and read timeout of a request
+     */
+    public UrlMetadataResolver(final int maxSize, final long ttlMillis, final int hostConnections, final int threads,
+            final int timeoutMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.hostConnections = hostConnections;
+        this.timeoutMillis = timeoutMillis;
+        this.entries = new LruMap(maxSize);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "url-metadata");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the resolver shared by this library, configured by {@link StoreConstants}.
+     *
+     * @return The shared resolver
+     */
+    public static UrlMetadataResolver getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Resolves the metadata of a URL.
+     *
+     * @param url The URL
+     * @return The metadata
+     * @throws IOException If the URL is not reachable or its server answered with an error
+     */
+    public UrlMetadata resolve(final URL url) throws IOException {
+        return await(resolveAsync(url));
+    }
+
+    /**
+     * Resolves the metadata of many URLs concurrently.
+     *
+     * @param urls The URLs
+     * @return The metadata, in the order of the URLs
+     * @throws IOException If at least one URL is not reachable or its server answered with an error
+     */
+    public List<UrlMetadata> resolveAll(final List<URL> urls) throws IOException {
+        final List<CompletableFuture<UrlMetadata>> futures = new ArrayList<>(urls.size());
+        for (final URL url : urls) {
+            futures.add(resolveAsync(url));
+        }
+        final List<UrlMetadata> result = new ArrayList<>(urls.size());
+        for (final CompletableFuture<UrlMetadata> future : futures) {
+            result.add(await(future));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached metadata of a URL without contacting its server. The metadata may be stale.
+     *
+     * @param url The URL
+     * @return The cached metadata, null if the URL was not resolved yet
+     */
+    public UrlMetadata peek(final String url) {
+        synchronized (entries) {
+            final CompletableFuture<UrlMetadata> cached = entries.get(url);
+            return cached == null || cached.isCompletedExceptionally() ? null : cached.getNow(null);
+        }
+    }
+
+    private CompletableFuture<UrlMetadata> resolveAsync(final URL url) {
+        final String key = url.toString();
+        final CompletableFuture<UrlMetadata> future;
+        synchronized (entries) {
+            final CompletableFuture<UrlMetadata> cached = entries.get(key);
+            if (cached != null && !cached.isDone()) {
+                // Shares the running request
+                return cached;
+            }
+            final UrlMetadata previous = cached == null ? null : cached.getNow(null);
+            if (previous != null && System.currentTimeMillis() - previous.getFetchedAt() < ttlMillis) {
+                return cached;
+            }
+            if (maxSize <= 0) {
+                return schedule(url, null);
+            }
+            future = schedule(url, previous);
+            entries.put(key, future);
+        }
+        future.whenComplete((metadata, error) -> {
+            if (error != null) {
+                // Failures are not cached
+                synchronized (entries) {
+                    entries.remove(key, future);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fetches the metadata of a URL once a connection to its host is available.
+     */
+    private CompletableFuture<UrlMetadata> schedule(final URL url, final UrlMetadata previous) {
+        final CompletableFuture<UrlMetadata> future = new CompletableFuture<>();
+        dispatch(url.getHost(), () -> {
+            try {
+                future.complete(fetch(url, previous));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs a request on the executor if its host has a free connection, otherwise queues it for the host.
+     */
+    private void dispatch(final String host, final Runnable request) {
+        synchronized (hostQueues) {
+            final HostQueue queue = hostQueues.computeIfAbsent(host, key -> new HostQueue());
+            if (queue.running >= hostConnections) {
+                queue.pending.add(request);
+                return;
+            }
+            queue.running++;
+        }
+        executor.execute(() -> runAndContinue(host, request));
+    }
+
+    /**
+     * Runs a request and hands its connection to the next queued request of the same host.
+     */
+    private void runAndContinue(final String host, final Runnable request) {
+        Runnable next = null;
+        try {
+            request.run();
+        } finally {
+            synchronized (hostQueues) {
+                final HostQueue queue = hostQueues.get(host);
+                next = queue.pending.poll();
+                if (next == null && --queue.running == 0) {
+                    hostQueues.remove(host);
+                }
+            }
+            if (next != null) {
+                // Resubmitted instead of run here, so the other hosts get a turn
+                final Runnable queued = next;
+                executor.execute(() -> runAndContinue(host, queued));
+            }
+        }
+    }
+
+    private UrlMetadata fetch(final URL url, final UrlMetadata previous) {
+        try {
+            final URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            if (!(connection instanceof HttpURLConnection)) {
+                return fromConnection(connection, false);
+            }
+            final HttpURLConnection http = (HttpURLConnection) connection;
+            http.setRequestMethod("HEAD");
+            if (previous != null && previous.getEtag() != null) {
+                http.setRequestProperty("If-None-Match", previous.getEtag());
+            } else if (previous != null && previous.getLastModified() != null) {
+                http.setRequestProperty("If-Modified-Since", previous.getLastModified());
+            }
+            try {
+                final int status = http.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                    return previous.revalidatedAt(System.currentTimeMillis());
+                }
+                if (status == HttpURLConnection.HTTP_BAD_METHOD || status == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+                    return fetchWithRange(url);
+                }
+                if (status >= 400) {
+                    throw new IOException("Server answered " + status + " for " + url);
+                }
+                return fromConnection(http, "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges")));
+            } finally {
+                http.disconnect();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Requests the first byte only, for servers which do not support HEAD.
+     */
+    private UrlMetadata fetchWithRange(final URL url) throws IOException {
+        final HttpURLConnection http = (HttpURLConnection) url.openConnection();
+        http.setConnectTimeout(timeoutMillis);
+        http.setReadTimeout(timeoutMillis);
+        http.setRequestProperty("Range", "bytes=0-0");
+        try {
+            final int status = http.getResponseCode();
+            if (status >= 400) {
+                throw new IOException("Server answered " + status + " for " + url);
+            }
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                return fromConnection(http, false);
+            }
+            // Content-Range: bytes 0-0/<size>
+            final String range = http.getHeaderField("Content-Range");
+            long size = -1;
+            if (range != null && range.indexOf('/') >= 0) {
+                try {
+                    size = Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+                } catch (NumberFormatException e) {
+                    size = -1;
+                }
+            }
+            return new UrlMetadata(size, http.getContentType(), http.getHeaderField("ETag"),
+                    http.getHeaderField("Last-Modified"), true, System.currentTimeMillis(), digestsOf(http, false));
+        } finally {
+            http.disconnect();
+        }
+    }
+
+    private static UrlMetadata fromConnection(final URLConnection connection, final boolean rangeSupported) {
+        return new UrlMetadata(connection.getContentLengthLong(), connection.getContentType(),
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), rangeSupported,
+                System.currentTimeMillis(), digestsOf(connection, true));
+    }
+
+    /**
+     * Collects the digests of the whole file from the Digest header (RFC 3230), the x-goog-hash header of cloud
+     * storage and, unless only a range was requested, the Content-MD5 header.
+     */
+    private static Map<String, String> digestsOf(final URLConnection connection, final boolean wholeBody) {
+        final Map<String, String> digests = new HashMap<>();
+        for (String header : new String[] {"Digest", "x-goog-hash"}) {
+            final String value = connection.getHeaderField(header);
+            if (value == null) {
+                continue;
+            }
+            for (String item : value.split(",")) {
+                final int separator = item.indexOf('=');
+                final ChecksumAlgorithm algorithm = separator > 0
+                        ? ChecksumAlgorithm.fromName(item.substring(0, separator)) : null;
+                if (algorithm != null) {
+                    digests.put(algorithm.getName(), item.substring(separator + 1).trim());
+                }
+            }
+        }
+        final String contentMd5 = connection.getHeaderField("Content-MD5");
+        if (wholeBody && contentMd5 != null) {
+            digests.putIfAbsent(ChecksumAlgorithm.MD5.getName(), contentMd5.trim());
+        }
+        return digests.isEmpty() ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(digests);
+    }
+
+    /**
+     * The cached metadata in access order, the least recently used URL is removed beyond the maximum size
+     */
+    private static class LruMap extends LinkedHashMap<String, CompletableFuture<UrlMetadata>> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LruMap(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CompletableFuture<UrlMetadata>> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * The requests of a host, guarded by the lock of the host queues
+     */
+    private static class HostQueue {
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+        private int running = 0;
+    }
+
+    private static UrlMetadata await(final CompletableFuture<UrlMetadata> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
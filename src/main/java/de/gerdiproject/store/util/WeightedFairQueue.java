@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * This class represents a queue which is fair between keys, e.g. users. Each key has its own queue, and the keys are
+ * served in weighted round robin: a key with weight n may take n elements before the next key is served.
+ *
+ * @param <T> The type of the queued elements
+ */
+public class WeightedFairQueue<T> {
+
+    private final Map<String, Deque<T>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> weights = new HashMap<>();
+    private final Deque<String> rotation = new ArrayDeque<>();
+    private String current = null;
+    private int credit = 0;
+    private int size = 0;
+
+    /**
+     * Sets the weight of a key. Keys without explicit weight have a weight of 1.
+     *
+     * @param key    The key
+     * @param weight The weight, must be positive
+     */
+    public synchronized void setWeight(final String key, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("The weight must be positive.");
+        }
+        weights.put(key, weight);
+    }
+
+    /**
+     * Appends an element to the queue of a key.
+     *
+     * @param key  The key
+     * @param item The element
+     */
+    public synchronized void add(final String key, final T item) {
+        final Deque<T> queue = queues.computeIfAbsent(key, k -> {
+            rotation.addLast(k);
+            return new ArrayDeque<>();
+        });
+        queue.addLast(item);
+        size++;
+    }
+
+    /**
+     * Removes the next element, respecting the weights of the keys.
+     *
+     * @return The next element, or null if the queue is empty
+     */
+    public synchronized T poll() {
+        if (size == 0) {
+            return null;
+        }
+        if (current == null || credit <= 0 || !queues.containsKey(current)) {
+            current = rotation.pollFirst();
+            rotation.addLast(current);
+            credit = weights.getOrDefault(current, 1);
+        }
+        final Deque<T> queue = queues.get(current);
+        final T item = queue.pollFirst();
+        size--;
+        credit--;
+        if (queue.isEmpty()) {
+            queues.remove(current);
+            rotation.remove(current);
+            current = null;
+        }
+        return item;
+    }
+
+    /**
+     * Removes all elements matching a predicate.
+     *
+     * @param filter The predicate
+     * @return The number of removed elements
+     */
+    public synchronized int removeIf(final Predicate<T> filter) {
+        int removed = 0;
+        final Iterator<Map.Entry<String, Deque<T>>> it = queues.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Deque<T>> entry = it.next();
+            final int before = entry.getValue().size();
+            entry.getValue().removeIf(filter);
+            removed += before - entry.getValue().size();
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+                rotation.remove(entry.getKey());
+                if (entry.getKey().equals(current)) {
+                    current = null;
+                }
+            }
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Checks whether or not any element matches a predicate.
+     *
+     * @param filter The predicate
+     * @return true if at least one element matches, false otherwise
+     */
+    public synchronized boolean anyMatch(final Predicate<T> filter) {
+        for (final Deque<T> queue : queues.values()) {
+            for (final T item : queue) {
+                if (filter.test(item)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of queued elements.
+     *
+     * @return The number of elements
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the allowed transitions of the {@linkplain SessionState} life cycle.
+ */
+public class SessionStateTest {
+
+    @Test
+    public void movesAlongTheRegularLifeCycle() {
+        final SessionState[] cycle = {SessionState.CREATED, SessionState.RESOLVING, SessionState.READY,
+            SessionState.PROVISIONING, SessionState.COPYING, SessionState.DRAINING, SessionState.DONE};
+        for (int i = 0; i + 1 < cycle.length; i++) {
+            assertTrue(cycle[i] + " -> " + cycle[i + 1], cycle[i].canTransitionTo(cycle[i + 1]));
+        }
+    }
+
+    @Test
+    public void skipsNoStep() {
+        assertFalse(SessionState.CREATED.canTransitionTo(SessionState.READY));
+        assertFalse(SessionState.READY.canTransitionTo(SessionState.COPYING));
+        assertFalse(SessionState.COPYING.canTransitionTo(SessionState.DONE));
+    }
+
+    @Test
+    public void provisionsPreemptedSessionsAgain() {
+        assertTrue(SessionState.COPYING.canTransitionTo(SessionState.PROVISIONING));
+        assertFalse(SessionState.DRAINING.canTransitionTo(SessionState.PROVISIONING));
+    }
+
+    @Test
+    public void terminalStatesAreFinal() {
+        for (SessionState terminal : new SessionState[] {SessionState.DONE, SessionState.FAILED,
+            SessionState.KILLED}) {
+            assertTrue(terminal.isTerminal());
+            for (SessionState next : SessionState.values()) {
+                assertFalse(terminal + " -> " + next, terminal.canTransitionTo(next));
+            }
+        }
+    }
+
+    @Test
+    public void killsAndFailsRunningSessions() {
+        for (SessionState state : SessionState.values()) {
+            if (!state.isTerminal()) {
+                assertTrue(state.canTransitionTo(SessionState.KILLED));
+                assertFalse(state.canTransitionTo(state));
+            }
+        }
+        assertFalse(SessionState.CREATED.canTransitionTo(SessionState.FAILED));
+        assertTrue(SessionState.RESOLVING.canTransitionTo(SessionState.FAILED));
+        assertTrue(SessionState.COPYING.canTransitionTo(SessionState.FAILED));
+    }
+
+    @Test
+    public void startsWithProvisioning() {
+        assertFalse(SessionState.READY.isStarted());
+        assertTrue(SessionState.PROVISIONING.isStarted());
+        assertTrue(SessionState.KILLED.isStarted());
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the atomic state changes of a {@linkplain StoreTask}.
+ */
+public class StoreTaskTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void transitionsOnlyFromTheExpectedState() {
+        final StoreTask task = new StoreTask();
+        assertFalse(task.transition(SessionState.READY, SessionState.PROVISIONING));
+        assertTrue(task.transition(SessionState.CREATED, SessionState.RESOLVING));
+        assertFalse(task.transition(SessionState.RESOLVING, SessionState.COPYING));
+        assertEquals(SessionState.RESOLVING, task.getState());
+    }
+
+    @Test
+    public void advanceReturnsTheReplacedState() {
+        final StoreTask task = readyTask();
+        assertEquals(SessionState.READY, task.advance(SessionState.KILLED));
+        assertNull(task.advance(SessionState.KILLED));
+        assertNull(task.advance(SessionState.FAILED));
+        assertEquals(SessionState.KILLED, task.getState());
+    }
+
+    @Test
+    public void onlyOneConcurrentTransitionSucceeds() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final StoreTask task = readyTask();
+                final List<Boolean> results = race(executor,
+                    () -> task.transition(SessionState.READY, SessionState.PROVISIONING));
+                assertEquals(1, results.stream().filter(Boolean::booleanValue).count());
+                assertEquals(SessionState.PROVISIONING, task.getState());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void onlyOneConcurrentAdvanceToATerminalStateSucceeds() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final StoreTask task = readyTask();
+                task.transition(SessionState.READY, SessionState.PROVISIONING);
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<SessionState>> kills = new ArrayList<>();
+                final List<Future<SessionState>> failures = new ArrayList<>();
+                for (int i = 0; i < THREADS / 2; i++) {
+                    kills.add(executor.submit(() -> {
+                        start.await();
+                        return task.advance(SessionState.KILLED);
+                    }));
+                    failures.add(executor.submit(() -> {
+                        start.await();
+                        return task.advance(SessionState.FAILED);
+                    }));
+                }
+                start.countDown();
+                int killed = 0;
+                int failed = 0;
+                for (int i = 0; i < kills.size(); i++) {
+                    if (kills.get(i).get() != null) {
+                        assertEquals(SessionState.PROVISIONING, kills.get(i).get());
+                        killed++;
+                    }
+                    if (failures.get(i).get() != null) {
+                        assertEquals(SessionState.PROVISIONING, failures.get(i).get());
+                        failed++;
+                    }
+                }
+                assertEquals(1, killed + failed);
+                assertEquals(killed == 1 ? SessionState.KILLED : SessionState.FAILED, task.getState());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StoreTask readyTask() {
+        final StoreTask task = new StoreTask();
+        task.transition(SessionState.CREATED, SessionState.RESOLVING);
+        task.transition(SessionState.RESOLVING, SessionState.READY);
+        return task;
+    }
+
+    private static <T> List<T> race(final ExecutorService executor, final Callable<T> call) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        final List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.datamodel;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class tests the compact storage of {@linkplain TaskDocuments}.
+ */
+public class TaskDocumentsTest {
+
+    private static final String DIRECTORY = "http://example.org/data/";
+
+    @Test
+    public void keepsDocumentsBeyondTheInitialCapacity() throws Exception {
+        final TaskDocuments documents = new TaskDocuments();
+        for (int i = 0; i < 20; i++) {
+            documents.add(new URL(DIRECTORY + "file" + i + ".csv"), metadata(i));
+        }
+        assertEquals(20, documents.size());
+        assertEquals(DIRECTORY + "file13.csv", documents.getUrl(13));
+        assertEquals("/data/file13.csv", documents.getName(13));
+        assertEquals(13, documents.getSize(13));
+        assertEquals(CopyStatus.PENDING, documents.getStatus(13));
+    }
+
+    @Test
+    public void findsDocumentsAddedBeforeAndAfterTheFirstLookup() throws Exception {
+        final TaskDocuments documents = new TaskDocuments();
+        documents.add(new URL(DIRECTORY + "a.csv"), metadata(1));
+        documents.add(new URL(DIRECTORY + "a.csv"), metadata(1));
+        assertEquals(0, documents.indexOf(DIRECTORY + "a.csv"));
+        documents.add(new URL(DIRECTORY + "b.csv"), metadata(1));
+        assertEquals(2, documents.indexOf(DIRECTORY + "b.csv"));
+        assertEquals(-1, documents.indexOf(DIRECTORY + "c.csv"));
+    }
+
+    @Test
+    public void storesTheStateOfStreams() throws Exception {
+        final TaskDocuments documents = new TaskDocuments();
+        documents.add(new URL(DIRECTORY + "a.csv"), metadata(10));
+        final ResearchDataInputStream stream = documents.open(0);
+        stream.setStatus(CopyStatus.FINISHED);
+        assertEquals(CopyStatus.PENDING, documents.getStatus(0));
+        documents.update(0, stream);
+        assertEquals(CopyStatus.FINISHED, documents.getStatus(0));
+        assertEquals(100, documents.getProgressInPercent(0));
+    }
+
+    @Test
+    public void marksDocumentsOfUnknownSize() throws Exception {
+        final TaskDocuments documents = new TaskDocuments();
+        documents.add(new URL(DIRECTORY + "a.csv"), metadata(-1));
+        assertEquals(CopyStatus.UNKNOWN_SIZE, documents.getStatus(0));
+        assertEquals(0, documents.getProgressInPercent(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @SuppressWarnings("deprecation")
+    public void elementsOfTasksAreReadOnly() throws Exception {
+        final StoreTask task = new StoreTask();
+        task.getDocuments().add(new URL(DIRECTORY + "a.csv"), metadata(1));
+        task.getElements().add(task.getDocuments().open(0));
+    }
+
+    private static UrlMetadata metadata(final long size) {
+        return new UrlMetadata(size, null, "\"etag\"", null, true, 0L, Collections.emptyMap());
+    }
+}
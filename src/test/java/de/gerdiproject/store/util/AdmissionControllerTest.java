@@ -0,0 +1,168 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.datamodel.Priority;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the rate limits, the queue and the preemption of the {@linkplain AdmissionController}.
+ */
+public class AdmissionControllerTest {
+
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> preempted = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void rateLimitsEachUser() {
+        final AdmissionController controller = new AdmissionController(2, 0.001, 10, 1000);
+        assertEquals(0, controller.tryAcquire("alice"));
+        assertEquals(0, controller.tryAcquire("alice"));
+        assertTrue(controller.tryAcquire("alice") > 0);
+        assertEquals(0, controller.tryAcquire("bob"));
+    }
+
+    @Test
+    public void queuesJobsBeyondTheLimitsInFifoOrder() {
+        final AdmissionController controller = new AdmissionController(10, 10, 2, 1000);
+        assertEquals(0, controller.admit("a", 2, 0, start("a")));
+        assertEquals(1, controller.admit("b", 1, 0, start("b")));
+        assertEquals(2, controller.admit("c", 1, 0, start("c")));
+        assertEquals(2, controller.getQueuePosition("c"));
+        controller.release("a");
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertEquals(0, controller.getQueuePosition("c"));
+    }
+
+    @Test
+    public void laterJobsDoNotOvertakeTheHeadOfTheQueue() {
+        final AdmissionController controller = new AdmissionController(10, 10, 3, 1000);
+        controller.admit("a", 2, 0, start("a"));
+        assertEquals(1, controller.admit("b", 2, 0, start("b")));
+        // would fit, but b is queued ahead
+        assertEquals(2, controller.admit("c", 1, 0, start("c")));
+        assertEquals(Arrays.asList("a"), started);
+    }
+
+    @Test
+    public void limitsTheBytesInFlight() {
+        final AdmissionController controller = new AdmissionController(10, 10, 10, 100);
+        controller.admit("a", 1, 80, start("a"));
+        assertEquals(1, controller.admit("b", 1, 30, start("b")));
+        controller.release("a");
+        assertEquals(Arrays.asList("a", "b"), started);
+    }
+
+    @Test
+    public void admitsAnOversizedJobOnceNothingElseRuns() {
+        final AdmissionController controller = new AdmissionController(10, 10, 2, 100);
+        controller.admit("a", 1, 0, start("a"));
+        assertEquals(1, controller.admit("huge", 5, 1000, start("huge")));
+        controller.release("a");
+        assertEquals(Arrays.asList("a", "huge"), started);
+    }
+
+    @Test
+    public void limitsTheJobsOccupyingAThread() {
+        final AdmissionController controller = new AdmissionController(10, 10, 10, 1000, false, 1);
+        assertEquals(0, controller.admit("a", Priority.NORMAL, 1, 0, true, start("a"), null));
+        assertEquals(1, controller.admit("b", Priority.NORMAL, 1, 0, true, start("b"), null));
+        controller.release("a");
+        assertEquals(Arrays.asList("a", "b"), started);
+    }
+
+    @Test
+    public void jobsWithoutAThreadAreNotLimitedByThreads() {
+        final AdmissionController controller = new AdmissionController(10, 10, 10, 1000, false, 1);
+        controller.admit("a", Priority.NORMAL, 1, 0, true, start("a"), null);
+        assertEquals(0, controller.admit("b", Priority.NORMAL, 1, 0, false, start("b"), null));
+    }
+
+    @Test
+    public void removesQueuedJobs() {
+        final AdmissionController controller = new AdmissionController(10, 10, 1, 1000);
+        controller.admit("a", 1, 0, start("a"));
+        controller.admit("b", 1, 0, start("b"));
+        assertTrue(controller.dequeue("b"));
+        assertEquals(0, controller.getQueuePosition("b"));
+        controller.release("a");
+        assertEquals(Arrays.asList("a"), started);
+    }
+
+    @Test
+    public void queuesByPriorityInFifoOrderWithinAPriority() {
+        final AdmissionController controller = new AdmissionController(10, 10, 1, 1000);
+        controller.admit("running", 1, 0, start("running"));
+        controller.admit("low", Priority.LOW, 1, 0, start("low"), null);
+        controller.admit("normal1", Priority.NORMAL, 1, 0, start("normal1"), null);
+        controller.admit("high", Priority.HIGH, 1, 0, start("high"), null);
+        controller.admit("normal2", Priority.NORMAL, 1, 0, start("normal2"), null);
+        assertEquals(1, controller.getQueuePosition("high"));
+        assertEquals(4, controller.getQueuePosition("low"));
+        for (String session : Arrays.asList("running", "high", "normal1", "normal2")) {
+            controller.release(session);
+        }
+        assertEquals(Arrays.asList("running", "high", "normal1", "normal2", "low"), started);
+    }
+
+    @Test
+    public void preemptsTheLowestPriorityAndNewestJobsFirst() {
+        final AdmissionController controller = new AdmissionController(10, 10, 3, 1000, true);
+        admitPreemptible(controller, "low-old", Priority.LOW);
+        admitPreemptible(controller, "normal", Priority.NORMAL);
+        admitPreemptible(controller, "low-new", Priority.LOW);
+        assertEquals(1, admitPreemptible(controller, "high", Priority.HIGH));
+        assertEquals(Arrays.asList("low-new"), preempted);
+
+        // the preempted job keeps its capacity until it released it
+        assertEquals(Arrays.asList("low-old", "normal", "low-new"), started);
+        controller.release("low-new");
+        assertEquals(Arrays.asList("low-old", "normal", "low-new", "high"), started);
+    }
+
+    @Test
+    public void preemptsOnlyJobsOfALowerPriority() {
+        final AdmissionController controller = new AdmissionController(10, 10, 1, 1000, true);
+        admitPreemptible(controller, "normal", Priority.NORMAL);
+        admitPreemptible(controller, "other", Priority.NORMAL);
+        assertTrue(preempted.isEmpty());
+    }
+
+    @Test
+    public void preemptsNothingIfDisabled() {
+        final AdmissionController controller = new AdmissionController(10, 10, 1, 1000, false);
+        admitPreemptible(controller, "low", Priority.LOW);
+        admitPreemptible(controller, "high", Priority.HIGH);
+        assertTrue(preempted.isEmpty());
+    }
+
+    private int admitPreemptible(final AdmissionController controller, final String session,
+            final Priority priority) {
+        return controller.admit(session, priority, 1, 0, start(session), () -> preempted.add(session));
+    }
+
+    private Runnable start(final String session) {
+        return () -> started.add(session);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * This class tests the {@linkplain Crc32cDigest} against the check values of CRC-32C.
+ */
+public class Crc32cDigestTest {
+
+    private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void computesTheCheckValue() {
+        assertArrayEquals(bytes(0xE3069283), new Crc32cDigest().digest(CHECK_INPUT));
+    }
+
+    @Test
+    public void computesTheValueOfAnEmptyInput() {
+        assertArrayEquals(bytes(0x00000000), new Crc32cDigest().digest());
+    }
+
+    @Test
+    public void computesTheSameValueIncrementally() {
+        final Crc32cDigest digest = new Crc32cDigest();
+        digest.update(CHECK_INPUT[0]);
+        digest.update(CHECK_INPUT, 1, 4);
+        digest.update(CHECK_INPUT, 5, CHECK_INPUT.length - 5);
+        assertArrayEquals(bytes(0xE3069283), digest.digest());
+    }
+
+    @Test
+    public void resetsAfterTheDigest() {
+        final Crc32cDigest digest = new Crc32cDigest();
+        digest.digest(new byte[] {1, 2, 3});
+        assertArrayEquals(bytes(0xE3069283), digest.digest(CHECK_INPUT));
+    }
+
+    private static byte[] bytes(final int value) {
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import de.gerdiproject.store.datamodel.ICredentials;
+import de.gerdiproject.store.datamodel.IMultipartUpload;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the part sizing, retries and aborts of the {@linkplain MultipartUploader}.
+ */
+public class MultipartUploaderTest {
+
+    private static final ICredentials CREDS = new ICredentials() {
+    };
+
+    @Test
+    public void uploadsPartsOfThePreferredSize() throws IOException {
+        final FakeUpload target = new FakeUpload(4, 100);
+        new MultipartUploader(2, 8, 2, 0, 1).upload(target, CREDS, "/file", input(20), 20);
+        assertEquals(Arrays.asList(8, 8, 4), target.partLengths());
+        assertArrayEquals(data(20), target.completedObject());
+    }
+
+    @Test
+    public void raisesThePartSizeToTheMinimumOfTheStore() throws IOException {
+        final FakeUpload target = new FakeUpload(10, 100);
+        new MultipartUploader(2, 4, 2, 0, 1).upload(target, CREDS, "/file", input(25), 25);
+        assertEquals(Arrays.asList(10, 10, 5), target.partLengths());
+    }
+
+    @Test
+    public void raisesThePartSizeToStayWithinThePartLimit() throws IOException {
+        final FakeUpload target = new FakeUpload(1, 3);
+        new MultipartUploader(2, 4, 2, 0, 1).upload(target, CREDS, "/file", input(20), 20);
+        assertEquals(Arrays.asList(7, 7, 6), target.partLengths());
+        assertArrayEquals(data(20), target.completedObject());
+    }
+
+    @Test
+    public void uploadsAnEmptyStreamAsOnePart() throws IOException {
+        final FakeUpload target = new FakeUpload(1, 100);
+        new MultipartUploader(1, 4, 1, 0, 1).upload(target, CREDS, "/file", input(0), 0);
+        assertEquals(Arrays.asList(0), target.partLengths());
+    }
+
+    @Test
+    public void retriesFailedParts() throws IOException {
+        final FakeUpload target = new FakeUpload(1, 100);
+        target.failures.put(2, new AtomicInteger(2));
+        new MultipartUploader(2, 4, 2, 2, 1).upload(target, CREDS, "/file", input(12), 12);
+        assertArrayEquals(data(12), target.completedObject());
+        assertEquals(0, target.aborts.get());
+    }
+
+    @Test
+    public void abortsOnceARetriedPartStillFails() {
+        final FakeUpload target = new FakeUpload(1, 100);
+        target.failures.put(2, new AtomicInteger(3));
+        try {
+            new MultipartUploader(2, 4, 2, 2, 1).upload(target, CREDS, "/file", input(12), 12);
+            fail("The upload must fail");
+        } catch (IOException e) {
+            assertEquals("part 2 failed", e.getMessage());
+        }
+        assertEquals(1, target.aborts.get());
+        assertNull(target.completed);
+    }
+
+    @Test
+    public void abortsStreamsExceedingThePartLimit() {
+        final FakeUpload target = new FakeUpload(1, 2);
+        try {
+            new MultipartUploader(2, 4, 2, 0, 1).upload(target, CREDS, "/file", input(12), -1);
+            fail("The upload must fail");
+        } catch (IOException e) {
+            assertEquals("The stream exceeds 2 parts.", e.getMessage());
+        }
+        assertEquals(1, target.aborts.get());
+        assertNull(target.completed);
+    }
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static ByteArrayInputStream input(final int length) {
+        return new ByteArrayInputStream(data(length));
+    }
+
+    /**
+     * An object store keeping the uploaded parts in memory
+     */
+    private static class FakeUpload implements IMultipartUpload<ICredentials> {
+        private final int minPartSize;
+        private final int maxParts;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        private final Map<Integer, AtomicInteger> failures = new ConcurrentHashMap<>();
+        private final AtomicInteger aborts = new AtomicInteger();
+        private volatile List<String> completed;
+
+        FakeUpload(final int minPartSize, final int maxParts) {
+            this.minPartSize = minPartSize;
+            this.maxParts = maxParts;
+        }
+
+        @Override
+        public String initiate(final ICredentials creds, final String targetPath) {
+            return "upload";
+        }
+
+        @Override
+        public String uploadPart(final ICredentials creds, final String uploadId, final int partNumber,
+                final byte[] data, final int length) throws IOException {
+            final AtomicInteger remaining = failures.get(partNumber);
+            if (remaining != null && remaining.getAndDecrement() > 0) {
+                throw new IOException("part " + partNumber + " failed");
+            }
+            parts.put(partNumber, Arrays.copyOf(data, length));
+            return "tag" + partNumber;
+        }
+
+        @Override
+        public void complete(final ICredentials creds, final String uploadId, final List<String> partTags) {
+            completed = new ArrayList<>(partTags);
+        }
+
+        @Override
+        public void abort(final ICredentials creds, final String uploadId) {
+            aborts.incrementAndGet();
+        }
+
+        @Override
+        public int getMinPartSize() {
+            return minPartSize;
+        }
+
+        @Override
+        public int getMaxParts() {
+            return maxParts;
+        }
+
+        List<Integer> partLengths() {
+            final List<Integer> lengths = new ArrayList<>();
+            for (int i = 1; i <= parts.size(); i++) {
+                lengths.add(parts.get(i).length);
+            }
+            return lengths;
+        }
+
+        byte[] completedObject() {
+            final ByteArrayOutputStream object = new ByteArrayOutputStream();
+            for (String tag : completed) {
+                final byte[] part = parts.get(Integer.parseInt(tag.substring("tag".length())));
+                object.write(part, 0, part.length);
+            }
+            return object.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the refill of a {@linkplain TokenBucket}.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void allowsABurstOfItsCapacity() {
+        final TokenBucket bucket = new TokenBucket(3, 0.001);
+        assertTrue(bucket.isFull());
+        assertTrue(bucket.tryAcquire(1));
+        assertTrue(bucket.tryAcquire(2));
+        assertFalse(bucket.tryAcquire(1));
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    public void refillsOverTime() throws InterruptedException {
+        // one token every 20 milliseconds
+        final TokenBucket bucket = new TokenBucket(1, 50);
+        assertTrue(bucket.tryAcquire(1));
+        assertFalse(bucket.tryAcquire(1));
+        final long wait = bucket.millisUntilAvailable(1);
+        assertTrue("wait was " + wait, wait > 0 && wait <= 20);
+        Thread.sleep(wait + 10);
+        assertEquals(0, bucket.millisUntilAvailable(1));
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void doesNotRefillBeyondItsCapacity() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(2, 1000);
+        Thread.sleep(20);
+        assertTrue(bucket.isFull());
+        assertFalse(bucket.tryAcquire(3));
+        assertTrue(bucket.tryAcquire(2));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2018 Nelson Tavares de Sousa (tavaresdesousa@email.uni-kiel.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.gerdiproject.store.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the fairness of a {@linkplain WeightedFairQueue}.
+ */
+public class WeightedFairQueueTest {
+
+    @Test
+    public void servesKeysInRoundRobin() {
+        final WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+        queue.add("alice", "a1");
+        queue.add("alice", "a2");
+        queue.add("alice", "a3");
+        queue.add("bob", "b1");
+        queue.add("carol", "c1");
+        queue.add("bob", "b2");
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "b2", "a3"), drain(queue));
+    }
+
+    @Test
+    public void servesKeysByWeight() {
+        final WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+        queue.setWeight("alice", 2);
+        for (int i = 1; i <= 4; i++) {
+            queue.add("alice", "a" + i);
+        }
+        queue.add("bob", "b1");
+        queue.add("bob", "b2");
+        assertEquals(Arrays.asList("a1", "a2", "b1", "a3", "a4", "b2"), drain(queue));
+    }
+
+    @Test
+    public void aLargeBacklogDelaysOtherKeysByOneRoundAtMost() {
+        final WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+        for (int i = 0; i < 1000; i++) {
+            queue.add("bulk", "bulk" + i);
+        }
+        queue.poll();
+        queue.add("interactive", "small");
+        assertTrue(Arrays.asList(queue.poll(), queue.poll()).contains("small"));
+    }
+
+    @Test
+    public void removesMatchingElements() {
+        final WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+        queue.add("alice", "a1");
+        queue.add("bob", "b1");
+        queue.add("bob", "b2");
+        assertTrue(queue.anyMatch(item -> item.startsWith("b")));
+        assertEquals(2, queue.removeIf(item -> item.startsWith("b")));
+        assertFalse(queue.anyMatch(item -> item.startsWith("b")));
+        assertEquals(1, queue.size());
+        assertEquals(Arrays.asList("a1"), drain(queue));
+        assertNull(queue.poll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWeightsBelowOne() {
+        new WeightedFairQueue<String>().setWeight("alice", 0);
+    }
+
+    private static List<String> drain(final WeightedFairQueue<String> queue) {
+        final List<String> items = new ArrayList<>();
+        String item;
+        while ((item = queue.poll()) != null) {
+            items.add(item);
+        }
+        assertEquals(0, queue.size());
+        return items;
+    }
+}